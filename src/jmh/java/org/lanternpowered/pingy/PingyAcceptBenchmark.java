@@ -0,0 +1,106 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency from connecting to receiving the status response
+ * over loopback, with and without {@code TCP_DEFER_ACCEPT}. The client
+ * resets the connection when it's done, so that the benchmark doesn't
+ * run out of ports because of connections in the {@code TIME_WAIT} state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PingyAcceptBenchmark {
+
+    @Param({"0", "5"})
+    public int tcpDeferAccept;
+
+    private EventLoopGroup group;
+    private Pingy pingy;
+    private InetSocketAddress address;
+    private byte[] request;
+    private final byte[] response = new byte[1 << 16];
+
+    @Setup
+    public void setup() throws Exception {
+        if (!Epoll.isAvailable()) {
+            throw new IllegalStateException("The listener options require epoll.");
+        }
+        PingyBenchmarkUtils.silenceLogs();
+        final int port = PingyBenchmarkUtils.freePort();
+        this.group = new EpollEventLoopGroup(1);
+        this.pingy = Pingy.builder()
+                .properties(PingyBenchmarkUtils.properties("{\"ip\": \"127.0.0.1\", \"port\": " + port +
+                        ", \"tcp-defer-accept\": " + this.tcpDeferAccept + ", \"event-loop-sampler-interval\": 0}"))
+                .eventLoopGroup(this.group)
+                .build();
+        this.pingy.start();
+        this.address = new InetSocketAddress("127.0.0.1", port);
+        this.request = PingyBenchmarkUtils.statusRequest(port);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.pingy.stop();
+        this.group.shutdownGracefully().sync();
+    }
+
+    @Benchmark
+    public int connectAndRequestStatus() throws Exception {
+        try (Socket socket = new Socket()) {
+            socket.setSoLinger(true, 0);
+            socket.setTcpNoDelay(true);
+            socket.connect(this.address);
+            socket.getOutputStream().write(this.request);
+            final InputStream input = socket.getInputStream();
+            return PingyBenchmarkUtils.readFrame(input, this.response);
+        }
+    }
+}
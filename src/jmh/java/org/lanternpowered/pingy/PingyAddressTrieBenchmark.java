@@ -0,0 +1,103 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the lookups of remote addresses in a {@link PingyAddressTrie}
+ * with a large amount of prefixes. Run with {@code -prof gc} to verify
+ * that the ipv4 lookups don't allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PingyAddressTrieBenchmark {
+
+    private static final int ADDRESSES = 1 << 16;
+
+    @Param({"100000", "1000000"})
+    public int prefixes;
+
+    private PingyAddressTrie trie;
+    private InetAddress[] v4Addresses;
+    private InetAddress[] v6Addresses;
+    private int index;
+
+    @Setup
+    public void setup() throws Exception {
+        final Random random = new Random(1);
+        final PingyAddressTrie.Builder builder = new PingyAddressTrie.Builder();
+        final byte[] v4 = new byte[4];
+        final byte[] v6 = new byte[16];
+        for (int i = 0; i < this.prefixes; i++) {
+            // Mostly ipv4 ranges, like the published scanner and cloud lists
+            if (i % 8 == 0) {
+                random.nextBytes(v6);
+                builder.add(InetAddress.getByAddress(v6), 32 + random.nextInt(33), PingyAddressTrie.BLOCK);
+            } else {
+                random.nextBytes(v4);
+                builder.add(InetAddress.getByAddress(v4), 16 + random.nextInt(17),
+                        i % 50 == 0 ? PingyAddressTrie.ALLOW : PingyAddressTrie.BLOCK);
+            }
+        }
+        this.trie = builder.build();
+        this.v4Addresses = new InetAddress[ADDRESSES];
+        this.v6Addresses = new InetAddress[ADDRESSES];
+        for (int i = 0; i < ADDRESSES; i++) {
+            random.nextBytes(v4);
+            this.v4Addresses[i] = InetAddress.getByAddress(v4);
+            random.nextBytes(v6);
+            this.v6Addresses[i] = InetAddress.getByAddress(v6);
+        }
+    }
+
+    @Benchmark
+    public byte lookupV4() {
+        return this.trie.lookup(this.v4Addresses[this.index++ & (ADDRESSES - 1)]);
+    }
+
+    @Benchmark
+    public byte lookupV6() {
+        return this.trie.lookup(this.v6Addresses[this.index++ & (ADDRESSES - 1)]);
+    }
+}
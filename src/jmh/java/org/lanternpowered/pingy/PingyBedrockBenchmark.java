@@ -0,0 +1,142 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import com.google.gson.Gson;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the unconnected pongs per second that the bedrock responder
+ * sends over loopback, with a single event loop thread (one core). The
+ * pings are sent in bursts, so the responder can answer them in batches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PingyBedrockBenchmark {
+
+    private static final int BURST = 32;
+
+    private static final byte[] MAGIC = {
+            (byte) 0x00, (byte) 0xff, (byte) 0xff, (byte) 0x00, (byte) 0xfe, (byte) 0xfe, (byte) 0xfe, (byte) 0xfe,
+            (byte) 0xfd, (byte) 0xfd, (byte) 0xfd, (byte) 0xfd, (byte) 0x12, (byte) 0x34, (byte) 0x56, (byte) 0x78,
+    };
+
+    @Param({"nio", "epoll"})
+    public String transport;
+
+    private EventLoopGroup group;
+    private Channel channel;
+    private DatagramSocket socket;
+    private DatagramPacket[] pings;
+    private DatagramPacket pong;
+    private long lost;
+
+    @Setup
+    public void setup() throws Exception {
+        final boolean epoll = this.transport.equals("epoll");
+        if (epoll && !Epoll.isAvailable()) {
+            throw new IllegalStateException("Epoll isn't available.");
+        }
+        this.group = epoll ? new EpollEventLoopGroup(1) : new NioEventLoopGroup(1);
+        final PingyProperties properties = new Gson().fromJson("{}", PingyProperties.class);
+        this.channel = new Bootstrap()
+                .group(this.group)
+                .channel(epoll ? EpollDatagramChannel.class : NioDatagramChannel.class)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .handler(new PingyBedrockHandler(properties))
+                .bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+
+        this.socket = new DatagramSocket(new InetSocketAddress("127.0.0.1", 0));
+        this.socket.connect(this.channel.localAddress());
+        this.socket.setSoTimeout(100);
+        this.socket.setReceiveBufferSize(1 << 20);
+        this.pings = new DatagramPacket[BURST];
+        for (int i = 0; i < BURST; i++) {
+            final ByteBuffer ping = ByteBuffer.allocate(1 + 8 + MAGIC.length + 8);
+            ping.put((byte) 0x01).putLong(i).put(MAGIC).putLong(42L);
+            this.pings[i] = new DatagramPacket(ping.array(), ping.capacity());
+        }
+        this.pong = new DatagramPacket(new byte[1500], 1500);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (this.lost > 0) {
+            System.err.println("Lost pongs: " + this.lost);
+        }
+        this.socket.close();
+        this.channel.close().sync();
+        this.group.shutdownGracefully().sync();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void pingBurst() throws Exception {
+        for (DatagramPacket ping : this.pings) {
+            this.socket.send(ping);
+        }
+        for (int i = 0; i < BURST; i++) {
+            try {
+                this.socket.receive(this.pong);
+            } catch (SocketTimeoutException e) {
+                this.lost += BURST - i;
+                return;
+            }
+        }
+    }
+}
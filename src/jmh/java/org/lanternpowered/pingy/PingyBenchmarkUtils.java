@@ -0,0 +1,127 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import com.google.gson.Gson;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+
+final class PingyBenchmarkUtils {
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Parses the properties from json, the missing properties keep their defaults.
+     *
+     * @param json The json
+     * @return The properties
+     */
+    static PingyProperties properties(String json) {
+        return GSON.fromJson(json, PingyProperties.class);
+    }
+
+    /**
+     * Discards the messages that pingy logs for every connection,
+     * the console would otherwise be measured as well.
+     */
+    static void silenceLogs() {
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Encodes the handshake to the status state followed by the status request.
+     *
+     * @param port The port in the handshake
+     * @return The encoded messages
+     */
+    static byte[] statusRequest(int port) {
+        final byte[] host = "localhost".getBytes(StandardCharsets.UTF_8);
+        final byte[] handshake = new byte[1 + 2 + 1 + host.length + 2 + 1];
+        int index = 0;
+        handshake[index++] = 0x00;
+        // Protocol version 340 as VarInt
+        handshake[index++] = (byte) 0xd4;
+        handshake[index++] = 0x02;
+        handshake[index++] = (byte) host.length;
+        System.arraycopy(host, 0, handshake, index, host.length);
+        index += host.length;
+        handshake[index++] = (byte) (port >> 8);
+        handshake[index++] = (byte) port;
+        handshake[index] = 0x01;
+        final byte[] request = new byte[1 + handshake.length + 2];
+        request[0] = (byte) handshake.length;
+        System.arraycopy(handshake, 0, request, 1, handshake.length);
+        request[request.length - 2] = 0x01;
+        request[request.length - 1] = 0x00;
+        return request;
+    }
+
+    /**
+     * Reads a complete frame, the status response.
+     *
+     * @param input The input stream
+     * @param buffer The buffer to read into, large enough for the frame
+     * @return The length of the frame
+     * @throws IOException If the stream ended
+     */
+    static int readFrame(InputStream input, byte[] buffer) throws IOException {
+        int length = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = input.read();
+            if (b == -1) {
+                throw new IOException("The stream ended");
+            }
+            length |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        new DataInputStream(input).readFully(buffer, 0, length);
+        return length;
+    }
+
+    private PingyBenchmarkUtils() {
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import com.google.gson.Gson;
+import io.netty.buffer.ByteBuf;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the status response lookups in a {@link PingyCatalog} with a large
+ * amount of hosts. The catalog is written directly in the catalog format, a
+ * million profile files would take too long for the {@link PingyCatalogBuilder}.
+ * Run with {@code -t 4} to measure the contention on the response cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PingyCatalogBenchmark {
+
+    /**
+     * The amount of hosts that are requested in the hit benchmark.
+     */
+    private static final int HOT_HOSTS = 1024;
+
+    /**
+     * The amount of distinct hosts that a scanner requests.
+     */
+    private static final int SCANNED_HOSTS = 1 << 20;
+
+    @Param({"100000", "1000000"})
+    public int hosts;
+
+    private Path directory;
+    private PingyCatalog catalog;
+    private byte[][] hostnames;
+    private byte[][] unknownHostnames;
+
+    @Setup
+    public void setup() throws IOException {
+        this.directory = Files.createTempDirectory("pingy-catalog");
+        this.hostnames = new byte[this.hosts][];
+        for (int i = 0; i < this.hosts; i++) {
+            this.hostnames[i] = ("play" + i + ".example.com").getBytes(StandardCharsets.UTF_8);
+        }
+        this.unknownHostnames = new byte[SCANNED_HOSTS][];
+        for (int i = 0; i < SCANNED_HOSTS; i++) {
+            this.unknownHostnames[i] = ("scan" + i + ".example.com").getBytes(StandardCharsets.UTF_8);
+        }
+        final byte[] json = new Gson().toJson(PingyStatusResponse.toJson(PingyBenchmarkUtils.properties("{}")))
+                .getBytes(StandardCharsets.UTF_8);
+        write(this.directory, this.hostnames, json);
+        this.catalog = PingyCatalog.open(this.directory, 64 * 1024 * 1024);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.catalog.close();
+        Files.delete(this.directory.resolve(PingyCatalog.INDEX_FILE));
+        Files.delete(this.directory.resolve(PingyCatalog.DATA_FILE));
+        Files.delete(this.directory);
+    }
+
+    private static void write(Path directory, byte[][] hostnames, byte[] json) throws IOException {
+        final long[] hashes = new long[hostnames.length];
+        final long[] offsets = new long[hostnames.length];
+        final int[] lengths = new int[hostnames.length];
+        long offset = 0;
+        // Everything fits in the first chunk, so records never cross a chunk boundary
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(directory.resolve(PingyCatalog.DATA_FILE))))) {
+            for (int i = 0; i < hostnames.length; i++) {
+                final byte[] hostname = hostnames[i];
+                data.writeShort(hostname.length);
+                data.write(hostname);
+                data.writeInt(json.length);
+                data.write(json);
+                data.writeInt(0);
+                hashes[i] = PingyCatalog.hash(hostname);
+                offsets[i] = offset;
+                lengths[i] = 2 + hostname.length + 4 + json.length + 4;
+                offset += lengths[i];
+            }
+        }
+        final Integer[] order = new Integer[hostnames.length];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, Comparator.comparingLong(i -> hashes[i]));
+        try (DataOutputStream index = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(directory.resolve(PingyCatalog.INDEX_FILE))))) {
+            index.writeInt(PingyCatalog.MAGIC);
+            index.writeInt(PingyCatalog.VERSION);
+            index.writeInt(hostnames.length);
+            for (int i : order) {
+                index.writeLong(hashes[i]);
+                index.writeLong(offsets[i]);
+                index.writeInt(lengths[i]);
+            }
+        }
+    }
+
+    private boolean get(byte[] hostname) {
+        final ByteBuf buf = this.catalog.getStatusResponse(hostname, true);
+        if (buf == null) {
+            return false;
+        }
+        buf.release();
+        return true;
+    }
+
+    /**
+     * A small set of popular hosts, which are always served from the cache.
+     */
+    @Benchmark
+    public boolean hit() {
+        return this.get(this.hostnames[ThreadLocalRandom.current().nextInt(HOT_HOSTS)]);
+    }
+
+    /**
+     * Requests spread over all the hosts, the cache only holds a part of them
+     * for the largest catalog, so the responses are loaded and evicted.
+     */
+    @Benchmark
+    public boolean spread() {
+        return this.get(this.hostnames[ThreadLocalRandom.current().nextInt(this.hosts)]);
+    }
+
+    /**
+     * A small set of unknown hosts that is requested repeatedly.
+     */
+    @Benchmark
+    public boolean unknown() {
+        return this.get(this.unknownHostnames[ThreadLocalRandom.current().nextInt(HOT_HOSTS)]);
+    }
+
+    /**
+     * A scanner that requests many distinct unknown hosts.
+     */
+    @Benchmark
+    public boolean scan() {
+        return this.get(this.unknownHostnames[ThreadLocalRandom.current().nextInt(SCANNED_HOSTS)]);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the status request throughput over a unix domain socket and
+ * over tcp loopback, like a proxy on the same host would connect. Every
+ * operation is a complete connection, a batch of connections is kept
+ * in flight by a epoll client, java 8 has no unix domain socket client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PingyUnixSocketBenchmark {
+
+    private static final int CONNECTIONS = 16;
+
+    @Param({"tcp", "unix"})
+    public String transport;
+
+    private EventLoopGroup group;
+    private EventLoopGroup clientGroup;
+    private Pingy pingy;
+    private Path directory;
+    private Bootstrap bootstrap;
+    private SocketAddress address;
+    private byte[] request;
+
+    private volatile CountDownLatch latch;
+    private final AtomicInteger failures = new AtomicInteger();
+
+    @Setup
+    public void setup() throws Exception {
+        if (!Epoll.isAvailable()) {
+            throw new IllegalStateException("Unix domain sockets require epoll.");
+        }
+        PingyBenchmarkUtils.silenceLogs();
+        final int port = PingyBenchmarkUtils.freePort();
+        this.directory = Files.createTempDirectory("pingy-socket");
+        final Path socketPath = this.directory.resolve("pingy.sock");
+        final boolean unix = this.transport.equals("unix");
+        this.group = new EpollEventLoopGroup(1);
+        this.pingy = Pingy.builder()
+                .properties(PingyBenchmarkUtils.properties("{\"ip\": \"127.0.0.1\", \"port\": " + port +
+                        ", \"tcp-enabled\": " + !unix + (unix ? ", \"unix-socket-path\": \"" + socketPath + "\"" : "") +
+                        ", \"event-loop-sampler-interval\": 0}"))
+                .eventLoopGroup(this.group)
+                .build();
+        this.pingy.start();
+        this.request = PingyBenchmarkUtils.statusRequest(port);
+
+        this.clientGroup = new EpollEventLoopGroup(1);
+        this.bootstrap = new Bootstrap()
+                .group(this.clientGroup)
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) throws Exception {
+                        ch.pipeline()
+                                .addLast(new PingyFramingHandler(PingyUpstreamHandler.MAX_RESPONSE_LENGTH,
+                                        3 + PingyUpstreamHandler.MAX_RESPONSE_LENGTH))
+                                .addLast(new ClientHandler());
+                    }
+                });
+        if (unix) {
+            this.bootstrap.channel(EpollDomainSocketChannel.class);
+            this.address = new DomainSocketAddress(socketPath.toFile());
+        } else {
+            // Reset the connections, otherwise the benchmark runs out of ports in the TIME_WAIT state
+            this.bootstrap.channel(EpollSocketChannel.class)
+                    .option(ChannelOption.SO_LINGER, 0)
+                    .option(ChannelOption.TCP_NODELAY, true);
+            this.address = new InetSocketAddress("127.0.0.1", port);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.clientGroup.shutdownGracefully().sync();
+        this.pingy.stop();
+        this.group.shutdownGracefully().sync();
+        Files.deleteIfExists(this.directory.resolve("pingy.sock"));
+        Files.delete(this.directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONNECTIONS)
+    public void requestStatus() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(CONNECTIONS);
+        this.latch = latch;
+        for (int i = 0; i < CONNECTIONS; i++) {
+            this.bootstrap.connect(this.address).addListener((ChannelFutureListener) future -> {
+                if (!future.isSuccess()) {
+                    this.failures.incrementAndGet();
+                    latch.countDown();
+                }
+            });
+        }
+        if (!latch.await(10, TimeUnit.SECONDS) || this.failures.get() != 0) {
+            throw new IllegalStateException("Not all the status requests were answered.");
+        }
+    }
+
+    private final class ClientHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+        private boolean answered;
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            // The request is already framed, so it bypasses the framing handler
+            ctx.pipeline().firstContext().writeAndFlush(Unpooled.wrappedBuffer(request));
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) throws Exception {
+            this.answered = true;
+            ctx.close();
+            latch.countDown();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            if (!this.answered) {
+                failures.incrementAndGet();
+                latch.countDown();
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+    }
+}
@@ -26,6 +26,7 @@
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
@@ -34,12 +35,17 @@
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
 import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
 import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -54,8 +60,14 @@
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 public class Pingy {
 
@@ -175,18 +187,78 @@ public static void main(String[] args) {
         final Pingy pingy = new Pingy(properties);
         try {
             pingy.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(pingy::stop));
             info("Pingy is successfully started.");
         } catch (IOException e) {
             throw new IllegalStateException("Unable to start the server", e);
         }
     }
 
+    /**
+     * Constructs a new {@link Builder}.
+     *
+     * @return The builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
     private final PingyProperties properties;
+    private final PingyChannelInitializer channelInitializer;
+
+    /**
+     * The event loop group that was provided by the builder, these
+     * won't be shut down when pingy is stopped.
+     */
+    private final EventLoopGroup providedEventLoopGroup;
+
+    /**
+     * The event loop group that was created by pingy itself.
+     */
+    private EventLoopGroup ownEventLoopGroup;
+    private final List<Channel> channels = new ArrayList<>();
+    private final PingyQueryHandler queryHandler;
+    private boolean started;
+
+    private PingyAccessLog accessLog;
+    private PingyCatalog catalog;
+    private Path unixSocketPath;
+    private PingyUpstreamPoller upstreamPoller;
+    private PingyEventLoopSampler eventLoopSampler;
+    private ScheduledFuture<?> addressListsReloadTask;
+    private FileTime blockListModified;
+    private FileTime allowListModified;
 
     public Pingy(PingyProperties properties) {
+        this(properties, null);
+    }
+
+    private Pingy(PingyProperties properties, EventLoopGroup eventLoopGroup) {
+        this.channelInitializer = new PingyChannelInitializer(properties);
+        this.queryHandler = properties.isQueryEnabled() ? new PingyQueryHandler(properties) : null;
+        this.providedEventLoopGroup = eventLoopGroup;
         this.properties = properties;
     }
 
+    /**
+     * Gets the {@link PingyProperties}.
+     *
+     * @return The properties
+     */
+    public PingyProperties getProperties() {
+        return this.properties;
+    }
+
+    /**
+     * Gets the {@link ChannelInitializer} that can be used to mount
+     * pingy on a listener that isn't managed by pingy.
+     *
+     * @return The channel initializer
+     */
+    public ChannelInitializer<Channel> getChannelInitializer() {
+        return this.channelInitializer;
+    }
+
     /**
      * Gets the {@link InetSocketAddress} that should be
      * used for the specified ip and port.
@@ -204,17 +276,129 @@ private static InetSocketAddress getBindAddress(String ip, int port) {
     }
 
     /**
-     * Starts the pingy server.
+     * Gets the {@link PingyCatalog} with the host
+     * profiles, if it's enabled.
      *
-     * @throws IOException
+     * @return The catalog
+     */
+    public Optional<PingyCatalog> getCatalog() {
+        return Optional.ofNullable(this.catalog);
+    }
+
+    /**
+     * Gets the {@link PingyEventLoopSampler}, if it's enabled
+     * and pingy is started.
+     *
+     * @return The event loop sampler
+     */
+    public Optional<PingyEventLoopSampler> getEventLoopSampler() {
+        return Optional.ofNullable(this.eventLoopSampler);
+    }
+
+    /**
+     * Gets the {@link PingyUpstreamPoller}, if there are upstream
+     * servers configured and pingy is started.
+     *
+     * @return The upstream poller
+     */
+    public Optional<PingyUpstreamPoller> getUpstreamPoller() {
+        return Optional.ofNullable(this.upstreamPoller);
+    }
+
+    /**
+     * Gets the amount of connections that were blocked
+     * by the block list.
+     *
+     * @return The amount of blocked connections
+     */
+    public long getBlockedConnections() {
+        return this.channelInitializer.getBlockedConnections();
+    }
+
+    /**
+     * Gets the amount of connections that were rejected
+     * because they weren't minecraft traffic.
+     *
+     * @param rejection The kind of rejection
+     * @return The amount of rejected connections
+     */
+    public long getRejectedConnections(PingyTrafficClassifier.Rejection rejection) {
+        return this.channelInitializer.getRejectedConnections(rejection);
+    }
+
+    /**
+     * Gets the amount of query stat requests that were rejected
+     * because they didn't have a valid challenge token.
+     *
+     * @return The amount of rejected query requests
+     */
+    public long getRejectedQueryRequests() {
+        return this.queryHandler == null ? 0 : this.queryHandler.getRejectedRequests();
+    }
+
+    /**
+     * Gets the amount of bytes that weren't sent because the favicon
+     * was left out for addresses that recently received it.
+     *
+     * @return The amount of saved bytes
+     */
+    public long getSavedFaviconBytes() {
+        return this.channelInitializer.getStatusProvider().getSavedFaviconBytes();
+    }
+
+    /**
+     * Reloads the block and allow list files. The new lists
+     * will only be applied to new connections.
+     *
+     * @throws IOException If one of the files couldn't be loaded
      */
-    public void start() throws IOException {
-        boolean epoll = false;
+    public void reloadAddressLists() throws IOException {
+        final Path blockList = this.getBlockListPath();
+        final Path allowList = this.getAllowListPath();
+        final FileTime blockListModified = getLastModifiedTime(blockList);
+        final FileTime allowListModified = getLastModifiedTime(allowList);
+        final PingyAddressTrie addressTrie = PingyAddressTrie.load(blockList, allowList);
+        this.channelInitializer.setAddressTrie(addressTrie);
+        this.blockListModified = blockListModified;
+        this.allowListModified = allowListModified;
+        debugInfo("Loaded the address lists into " + addressTrie.getNodeCount() + " nodes.");
+    }
+
+    private void reloadChangedAddressLists() {
+        try {
+            if (Objects.equals(this.blockListModified, getLastModifiedTime(this.getBlockListPath())) &&
+                    Objects.equals(this.allowListModified, getLastModifiedTime(this.getAllowListPath()))) {
+                return;
+            }
+            this.reloadAddressLists();
+            info("Reloaded the address lists.");
+        } catch (IOException e) {
+            warn("Failed to reload the address lists: " + e.getMessage());
+        }
+    }
+
+    private Path getBlockListPath() {
+        return this.properties.getBlockList().map(Paths::get).orElse(null);
+    }
 
+    private Path getAllowListPath() {
+        return this.properties.getAllowList().map(Paths::get).orElse(null);
+    }
+
+    private static FileTime getLastModifiedTime(Path path) throws IOException {
+        return path == null ? null : Files.getLastModifiedTime(path);
+    }
+
+    /**
+     * Gets whether epoll should be used to create a new event loop group.
+     *
+     * @return Whether epoll should be used
+     */
+    private boolean shouldUseEpoll() {
         if (this.properties.isUseEpollWhenAvailable()) {
             if (Epoll.isAvailable()) {
                 debugInfo("Epoll is available");
-                epoll = true;
+                return true;
             } else {
                 debugWarn("Epoll is unavailable (The following exception is only used to print the cause why it's unavailable, "
                         + "it won't affect the functionality.)");
@@ -222,35 +406,289 @@ public void start() throws IOException {
                 debug(() -> Epoll.unavailabilityCause().printStackTrace());
             }
         }
+        return false;
+    }
 
-        final ServerBootstrap bootstrap = new ServerBootstrap();
-        final EventLoopGroup group = epoll ? new EpollEventLoopGroup() : new NioEventLoopGroup();
-
-        final ChannelFuture future = bootstrap
-                .group(group)
-                .channel(epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
-                .childHandler(new ChannelInitializer<SocketChannel>() {
-                    @Override
-                    protected void initChannel(SocketChannel ch) throws Exception {
-                        ch.pipeline()
-                                .addLast(new ReadTimeoutHandler(20))
-                                .addLast(new PingyLegacyHandler(properties))
-                                .addLast(new PingyFramingHandler())
-                                .addLast(new PingyHandler(properties));
-                    }
-                })
-                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
-                .childOption(ChannelOption.TCP_NODELAY, true)
-                .childOption(ChannelOption.SO_KEEPALIVE, true)
-                .bind(getBindAddress(this.properties.getIp(), this.properties.getPort()));
+    /**
+     * Starts the pingy server.
+     *
+     * @throws IOException
+     */
+    public synchronized void start() throws IOException {
+        if (this.started) {
+            throw new IllegalStateException("Pingy is already started.");
+        }
+        this.started = true;
+        try {
+            this.start0();
+        } catch (IOException | RuntimeException e) {
+            this.stop();
+            throw e;
+        }
+    }
+
+    private void start0() throws IOException {
+        if (this.properties.getBlockList().isPresent() || this.properties.getAllowList().isPresent()) {
+            this.reloadAddressLists();
+            final int interval = this.properties.getAddressListsReloadInterval();
+            if (interval > 0) {
+                // Keep the file io out of the event loops
+                this.addressListsReloadTask = GlobalEventExecutor.INSTANCE.scheduleWithFixedDelay(
+                        this::reloadChangedAddressLists, interval, interval, TimeUnit.SECONDS);
+            }
+        }
+
+        final Optional<String> accessLogDirectory = this.properties.getAccessLogDirectory();
+        if (accessLogDirectory.isPresent()) {
+            this.accessLog = new PingyAccessLog(Paths.get(accessLogDirectory.get()),
+                    this.properties.getAccessLogSegmentSize() * 1024 * 1024, this.properties.getAccessLogMaxSegments());
+            this.channelInitializer.setAccessLog(this.accessLog);
+        }
+
+        final Optional<String> catalogDirectory = this.properties.getCatalogDirectory();
+        if (catalogDirectory.isPresent()) {
+            this.catalog = PingyCatalog.open(Paths.get(catalogDirectory.get()), this.properties.getCatalogCacheSize() * 1024L * 1024L);
+            this.channelInitializer.getStatusProvider().setCatalog(this.catalog);
+            info("Loaded the catalog with " + this.catalog.getHostCount() + " hosts.");
+        }
+
+        final int faviconResendInterval = this.properties.getFaviconResendInterval();
+        if (faviconResendInterval > 0) {
+            this.channelInitializer.getStatusProvider().setFaviconTracker(
+                    new PingyFaviconTracker(this.properties.getFaviconTrackerSize(), faviconResendInterval));
+        }
+
+        final EventLoopGroup group;
+        final boolean epoll;
+        if (this.providedEventLoopGroup != null) {
+            group = this.providedEventLoopGroup;
+            epoll = group instanceof EpollEventLoopGroup;
+        } else {
+            epoll = shouldUseEpoll();
+            group = epoll ? new EpollEventLoopGroup() : new NioEventLoopGroup();
+            this.ownEventLoopGroup = group;
+        }
+
+        final int samplerInterval = this.properties.getEventLoopSamplerInterval();
+        if (samplerInterval > 0) {
+            this.eventLoopSampler = new PingyEventLoopSampler(group, samplerInterval,
+                    this.properties.getEventLoopLagWarnThreshold());
+            this.eventLoopSampler.start();
+            this.channelInitializer.setEventLoopSampler(this.eventLoopSampler);
+        }
+
+        if (this.properties.getUpstreams().length > 0) {
+            this.upstreamPoller = new PingyUpstreamPoller(this.properties,
+                    this.channelInitializer.getStatusProvider(), group, epoll);
+            this.upstreamPoller.start();
+        }
+
+        if (this.properties.isTcpEnabled()) {
+            final ServerBootstrap bootstrap = new ServerBootstrap()
+                    .group(group)
+                    .channel(epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
+                    .childHandler(this.channelInitializer)
+                    .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childOption(ChannelOption.SO_KEEPALIVE, true);
+            this.applyListenerOptions(bootstrap, epoll);
+            this.bind(bootstrap.bind(getBindAddress(this.properties.getIp(), this.properties.getPort())));
+        }
+
+        final Optional<String> unixSocketPath = this.properties.getUnixSocketPath();
+        if (unixSocketPath.isPresent()) {
+            if (!epoll) {
+                throw new IOException("The unix domain socket listener requires epoll.");
+            }
+            final Path path = Paths.get(unixSocketPath.get());
+            // Remove the socket file that was left behind by a previous run
+            Files.deleteIfExists(path);
+            this.unixSocketPath = path;
+            // The tcp options don't apply to unix domain sockets
+            final ServerBootstrap bootstrap = new ServerBootstrap()
+                    .group(group)
+                    .channel(EpollServerDomainSocketChannel.class)
+                    .childHandler(this.channelInitializer)
+                    .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+            this.bind(bootstrap.bind(new DomainSocketAddress(path.toFile())));
+        }
+
+        if (this.properties.isBedrockEnabled()) {
+            final Bootstrap bedrockBootstrap = new Bootstrap();
+            this.bind(bedrockBootstrap
+                    .group(group)
+                    .channel(epoll ? EpollDatagramChannel.class : NioDatagramChannel.class)
+                    .handler(new PingyBedrockHandler(this.properties))
+                    .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                    .bind(getBindAddress(this.properties.getIp(), this.properties.getBedrockPort())));
+        }
+
+        if (this.queryHandler != null) {
+            final Bootstrap queryBootstrap = new Bootstrap();
+            this.bind(queryBootstrap
+                    .group(group)
+                    .channel(epoll ? EpollDatagramChannel.class : NioDatagramChannel.class)
+                    .handler(this.queryHandler)
+                    .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                    .bind(getBindAddress(this.properties.getIp(), this.properties.getQueryPort())));
+        }
+    }
+
+    /**
+     * Applies the configured socket options to the tcp listener.
+     *
+     * @param bootstrap The server bootstrap
+     * @param epoll Whether epoll is used
+     */
+    private void applyListenerOptions(ServerBootstrap bootstrap, boolean epoll) {
+        final int tcpDeferAccept = this.properties.getTcpDeferAccept();
+        final int tcpFastOpen = this.properties.getTcpFastOpen();
+        if (epoll) {
+            if (tcpDeferAccept > 0) {
+                bootstrap.option(EpollChannelOption.TCP_DEFER_ACCEPT, tcpDeferAccept);
+            }
+            if (tcpFastOpen > 0) {
+                bootstrap.option(EpollChannelOption.TCP_FASTOPEN, tcpFastOpen);
+            }
+        } else if (tcpDeferAccept > 0 || tcpFastOpen > 0) {
+            warn("TCP_DEFER_ACCEPT and TCP_FASTOPEN are only supported with epoll, they will be ignored.");
+        }
+        // The receive buffer size is applied to the listener, so that
+        // accepted connections can use it from the start
+        final int receiveBufferSize = this.properties.getReceiveBufferSize();
+        if (receiveBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+        final int sendBufferSize = this.properties.getSendBufferSize();
+        if (sendBufferSize > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+    }
+
+    /**
+     * Waits for the bind operation of the {@link ChannelFuture} to complete.
+     *
+     * @param future The bind future
+     * @throws IOException If the channel couldn't be bound
+     */
+    private void bind(ChannelFuture future) throws IOException {
         final Channel channel = future.awaitUninterruptibly().channel();
-        if (!channel.isActive()) {
+        // Don't check whether the channel is active, the unix domain
+        // socket channel doesn't report it after being bound
+        if (!future.isSuccess()) {
             final Throwable cause = future.cause();
             if (cause instanceof BindException) {
                 throw (BindException) cause;
             }
             throw new RuntimeException("Failed to bind to address", cause);
         }
+        this.channels.add(channel);
         info("Successfully bound to: " + channel.localAddress());
     }
+
+    /**
+     * Stops the pingy server. The event loop group will only
+     * be shut down if it was created by pingy.
+     */
+    public synchronized void stop() {
+        if (!this.started) {
+            return;
+        }
+        this.started = false;
+        for (Channel channel : this.channels) {
+            channel.close().awaitUninterruptibly();
+        }
+        this.channels.clear();
+        if (this.unixSocketPath != null) {
+            try {
+                Files.deleteIfExists(this.unixSocketPath);
+            } catch (IOException e) {
+                warn("Failed to delete the unix domain socket file: " + e.getMessage());
+            }
+            this.unixSocketPath = null;
+        }
+        if (this.accessLog != null) {
+            this.channelInitializer.setAccessLog(null);
+            this.accessLog.close();
+            this.accessLog = null;
+        }
+        this.channelInitializer.getStatusProvider().setFaviconTracker(null);
+        if (this.catalog != null) {
+            this.channelInitializer.getStatusProvider().setCatalog(null);
+            this.catalog.close();
+            this.catalog = null;
+        }
+        this.cancelTasks();
+        this.shutdownOwnEventLoopGroup();
+        info("Pingy is successfully stopped.");
+    }
+
+    private void cancelTasks() {
+        if (this.upstreamPoller != null) {
+            this.upstreamPoller.stop();
+            this.upstreamPoller = null;
+        }
+        if (this.eventLoopSampler != null) {
+            this.channelInitializer.setEventLoopSampler(null);
+            this.eventLoopSampler.stop();
+            this.eventLoopSampler = null;
+        }
+        if (this.addressListsReloadTask != null) {
+            this.addressListsReloadTask.cancel(false);
+            this.addressListsReloadTask = null;
+        }
+    }
+
+    private void shutdownOwnEventLoopGroup() {
+        if (this.ownEventLoopGroup != null) {
+            this.ownEventLoopGroup.shutdownGracefully().awaitUninterruptibly();
+            this.ownEventLoopGroup = null;
+        }
+    }
+
+    public static final class Builder {
+
+        private PingyProperties properties;
+        private EventLoopGroup eventLoopGroup;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the {@link PingyProperties} that should be used.
+         *
+         * @param properties The properties
+         * @return This builder, for chaining
+         */
+        public Builder properties(PingyProperties properties) {
+            this.properties = properties;
+            return this;
+        }
+
+        /**
+         * Sets the {@link EventLoopGroup} that should be used, this allows
+         * pingy to share the event loops of the host application. The group
+         * won't be shut down when pingy is stopped. Epoll will be used
+         * if the group is a {@link EpollEventLoopGroup}.
+         *
+         * @param eventLoopGroup The event loop group
+         * @return This builder, for chaining
+         */
+        public Builder eventLoopGroup(EventLoopGroup eventLoopGroup) {
+            this.eventLoopGroup = eventLoopGroup;
+            return this;
+        }
+
+        /**
+         * Builds a new {@link Pingy} instance.
+         *
+         * @return The pingy instance
+         */
+        public Pingy build() {
+            if (this.properties == null) {
+                throw new IllegalStateException("The properties must be set.");
+            }
+            return new Pingy(this.properties, this.eventLoopGroup);
+        }
+    }
 }
@@ -0,0 +1,339 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A access log that appends fixed width binary records to memory
+ * mapped segment files.
+ * <p>
+ * Every thread (event loop) appends to its own segment file, so no
+ * locks are needed. A new segment file is created once the current
+ * one is full. The unused tail of a segment is zero filled, records
+ * with a zero timestamp should be ignored when reading. The oldest
+ * segment files are deleted once there are too many of them.
+ */
+public final class PingyAccessLog {
+
+    /**
+     * The size of a single record in bytes.
+     */
+    public static final int RECORD_SIZE = 96;
+
+    /**
+     * The maximum amount of hostname bytes that are stored in a record.
+     */
+    public static final int MAX_HOSTNAME_LENGTH = 62;
+
+    public static final int TIMESTAMP_OFFSET = 0;
+    public static final int ADDRESS_OFFSET = 8;
+    public static final int PORT_OFFSET = 24;
+    public static final int PROTOCOL_VERSION_OFFSET = 26;
+    public static final int NEXT_STATE_OFFSET = 30;
+    public static final int FLAGS_OFFSET = 31;
+    public static final int OUTCOME_OFFSET = 32;
+    public static final int HOSTNAME_LENGTH_OFFSET = 33;
+    public static final int HOSTNAME_OFFSET = 34;
+
+    /**
+     * The flag that is set for legacy connections.
+     */
+    public static final int FLAG_LEGACY = 0x1;
+
+    /**
+     * The connection was closed before anything was answered.
+     */
+    public static final byte OUTCOME_DISCONNECTED = 0;
+
+    /**
+     * The status (or legacy ping) response was send.
+     */
+    public static final byte OUTCOME_STATUS = 1;
+
+    /**
+     * The status response and the ping response were send.
+     */
+    public static final byte OUTCOME_PING = 2;
+
+    /**
+     * The login attempt was answered with the disconnect message.
+     */
+    public static final byte OUTCOME_LOGIN = 3;
+
+    /**
+     * The connection was blocked.
+     */
+    public static final byte OUTCOME_BLOCKED = 4;
+
+    /**
+     * The connection was closed because of a error.
+     */
+    public static final byte OUTCOME_ERROR = 5;
+
+    /**
+     * The connection was rejected because it isn't minecraft traffic.
+     */
+    public static final byte OUTCOME_REJECTED = 6;
+
+    /**
+     * The file extension of the segment files.
+     */
+    public static final String SEGMENT_EXTENSION = ".bin";
+
+    private static final byte[] IPV4_MAPPED_PREFIX = {
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0xff, (byte) 0xff,
+    };
+
+    private final FastThreadLocal<Writer> writer = new FastThreadLocal<Writer>() {
+        @Override
+        protected Writer initialValue() {
+            final Writer writer = new Writer(writerCounter.getAndIncrement());
+            writers.add(writer);
+            return writer;
+        }
+    };
+    private final Set<Writer> writers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger writerCounter = new AtomicInteger();
+    private final long startTime = System.currentTimeMillis();
+    private volatile boolean closed;
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final int maxSegments;
+
+    /**
+     * Constructs a new access log without a limit on the amount of segments.
+     *
+     * @param directory The directory the segment files are stored in
+     * @param segmentSize The size of a segment file in bytes
+     * @throws IOException If the directory couldn't be created
+     */
+    public PingyAccessLog(Path directory, int segmentSize) throws IOException {
+        this(directory, segmentSize, 0);
+    }
+
+    /**
+     * Constructs a new access log.
+     *
+     * @param directory The directory the segment files are stored in
+     * @param segmentSize The size of a segment file in bytes
+     * @param maxSegments The maximum amount of segment files in the directory, the oldest
+     *                    ones are deleted when a new segment is created, 0 for no limit
+     * @throws IOException If the directory couldn't be created
+     */
+    public PingyAccessLog(Path directory, int segmentSize, int maxSegments) throws IOException {
+        this.segmentRecords = Math.max(1, segmentSize / RECORD_SIZE);
+        this.maxSegments = maxSegments;
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Appends a record to the segment of the current thread. Nothing
+     * is appended once the access log is closed.
+     *
+     * @param remoteAddress The remote address
+     * @param protocolVersion The protocol version, or -1 if unknown
+     * @param hostname The raw hostname bytes, or null if unknown
+     * @param nextState The requested protocol state, or -1 if unknown
+     * @param legacy Whether it was a legacy connection
+     * @param outcome The outcome
+     */
+    public void log(SocketAddress remoteAddress, int protocolVersion, byte[] hostname, int nextState, boolean legacy, byte outcome) {
+        if (this.closed) {
+            this.writer.remove();
+            return;
+        }
+        final Writer writer = this.writer.get();
+        // The segment may only be unmapped by close while nothing is being written
+        writer.writing = true;
+        try {
+            if (this.closed) {
+                return;
+            }
+            if (writer.buffer == null || writer.records == this.segmentRecords) {
+                this.nextSegment(writer);
+            }
+            this.write(writer.buffer, writer.records++ * RECORD_SIZE,
+                    remoteAddress, protocolVersion, hostname, nextState, legacy, outcome);
+        } catch (IOException e) {
+            Pingy.debug(e::printStackTrace);
+        } finally {
+            writer.writing = false;
+        }
+    }
+
+    private void write(MappedByteBuffer buffer, int offset, SocketAddress remoteAddress, int protocolVersion,
+            byte[] hostname, int nextState, boolean legacy, byte outcome) {
+        int port = 0;
+        if (remoteAddress instanceof InetSocketAddress) {
+            final InetSocketAddress socketAddress = (InetSocketAddress) remoteAddress;
+            final InetAddress address = socketAddress.getAddress();
+            if (address != null) {
+                final byte[] bytes = address.getAddress();
+                buffer.position(offset + ADDRESS_OFFSET);
+                if (address instanceof Inet4Address) {
+                    buffer.put(IPV4_MAPPED_PREFIX);
+                }
+                buffer.put(bytes);
+            }
+            port = socketAddress.getPort();
+        }
+        buffer.putShort(offset + PORT_OFFSET, (short) port);
+        buffer.putInt(offset + PROTOCOL_VERSION_OFFSET, protocolVersion);
+        buffer.put(offset + NEXT_STATE_OFFSET, (byte) nextState);
+        buffer.put(offset + FLAGS_OFFSET, (byte) (legacy ? FLAG_LEGACY : 0));
+        buffer.put(offset + OUTCOME_OFFSET, outcome);
+        if (hostname != null) {
+            final int length = Math.min(hostname.length, MAX_HOSTNAME_LENGTH);
+            buffer.put(offset + HOSTNAME_LENGTH_OFFSET, (byte) length);
+            buffer.position(offset + HOSTNAME_OFFSET);
+            buffer.put(hostname, 0, length);
+        }
+        // Write the timestamp last, a record is only valid once it's present
+        buffer.putLong(offset + TIMESTAMP_OFFSET, System.currentTimeMillis());
+    }
+
+    private void nextSegment(Writer writer) throws IOException {
+        if (writer.buffer != null) {
+            // The full segment isn't forced, the kernel writes the pages back after it's unmapped
+            PlatformDependent.freeDirectBuffer(writer.buffer);
+            writer.buffer = null;
+            writer.index++;
+        }
+        final Path file = this.directory.resolve(String.format("access-%d-%d-%d%s",
+                this.startTime, writer.id, writer.index, SEGMENT_EXTENSION));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping remains valid after the channel is closed
+            writer.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentRecords * RECORD_SIZE);
+        }
+        writer.file = file;
+        writer.records = 0;
+        if (this.maxSegments > 0) {
+            this.deleteOldSegments();
+        }
+    }
+
+    /**
+     * Deletes the least recently modified segment files until there are no more
+     * than the maximum amount left, the segments that are in use are kept.
+     */
+    private synchronized void deleteOldSegments() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, "*" + SEGMENT_EXTENSION)) {
+            stream.forEach(files::add);
+        }
+        if (files.size() <= this.maxSegments) {
+            return;
+        }
+        final Set<Path> active = new HashSet<>();
+        for (Writer writer : this.writers) {
+            final Path file = writer.file;
+            if (file != null) {
+                active.add(file);
+            }
+        }
+        final Map<Path, FileTime> modified = new HashMap<>();
+        for (Path file : files) {
+            modified.put(file, Files.getLastModifiedTime(file));
+        }
+        files.sort(Comparator.comparing(modified::get));
+        int remaining = files.size();
+        for (Path file : files) {
+            if (remaining <= this.maxSegments) {
+                break;
+            }
+            if (!active.contains(file)) {
+                Files.deleteIfExists(file);
+                remaining--;
+            }
+        }
+    }
+
+    /**
+     * Closes the access log, the segments of all the threads are
+     * written to the disk and unmapped. The thread locals of the
+     * other threads are removed once they try to log again.
+     */
+    public void close() {
+        this.closed = true;
+        for (Writer writer : this.writers) {
+            // Wait for the record that is being written, the next ones see that the log is closed
+            while (writer.writing) {
+                Thread.yield();
+            }
+            final MappedByteBuffer buffer = writer.buffer;
+            if (buffer != null) {
+                buffer.force();
+                PlatformDependent.freeDirectBuffer(buffer);
+                writer.buffer = null;
+            }
+        }
+        this.writers.clear();
+        this.writer.remove();
+    }
+
+    private static final class Writer {
+
+        private final int id;
+
+        // Only accessed by the thread of the writer, or by close once it stopped writing
+        private MappedByteBuffer buffer;
+        private int index;
+        private int records;
+
+        private volatile Path file;
+        private volatile boolean writing;
+
+        private Writer(int id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import static org.lanternpowered.pingy.PingyAccessLog.FLAGS_OFFSET;
+import static org.lanternpowered.pingy.PingyAccessLog.FLAG_LEGACY;
+import static org.lanternpowered.pingy.PingyAccessLog.HOSTNAME_LENGTH_OFFSET;
+import static org.lanternpowered.pingy.PingyAccessLog.HOSTNAME_OFFSET;
+import static org.lanternpowered.pingy.PingyAccessLog.MAX_HOSTNAME_LENGTH;
+import static org.lanternpowered.pingy.PingyAccessLog.OUTCOME_OFFSET;
+import static org.lanternpowered.pingy.PingyAccessLog.PROTOCOL_VERSION_OFFSET;
+import static org.lanternpowered.pingy.PingyAccessLog.RECORD_SIZE;
+import static org.lanternpowered.pingy.PingyAccessLog.SEGMENT_EXTENSION;
+import static org.lanternpowered.pingy.PingyAccessLog.TIMESTAMP_OFFSET;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A offline tool that summarizes the segment files
+ * written by the {@link PingyAccessLog}.
+ */
+public final class PingyAccessLogReader {
+
+    private static final String[] OUTCOMES = {
+            "disconnected", "status", "ping", "login", "blocked", "error", "rejected",
+    };
+
+    private static final int TOP_ENTRIES = 20;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: PingyAccessLogReader <directory or segment file>...");
+            System.exit(1);
+            return;
+        }
+
+        final List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            final Path path = Paths.get(arg);
+            if (Files.isDirectory(path)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*" + SEGMENT_EXTENSION)) {
+                    stream.forEach(files::add);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+
+        final Map<Integer, Long> versions = new HashMap<>();
+        final Map<String, Long> hostnames = new HashMap<>();
+        final long[] outcomes = new long[OUTCOMES.length];
+        long records = 0;
+        long legacy = 0;
+        long firstTimestamp = Long.MAX_VALUE;
+        long lastTimestamp = 0;
+
+        final byte[] hostname = new byte[MAX_HOSTNAME_LENGTH];
+        for (Path file : files) {
+            try (FileChannel channel = FileChannel.open(file)) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                for (int offset = 0; offset + RECORD_SIZE <= buffer.capacity(); offset += RECORD_SIZE) {
+                    final long timestamp = buffer.getLong(offset + TIMESTAMP_OFFSET);
+                    // The unused tail of the segment
+                    if (timestamp == 0) {
+                        break;
+                    }
+                    records++;
+                    firstTimestamp = Math.min(firstTimestamp, timestamp);
+                    lastTimestamp = Math.max(lastTimestamp, timestamp);
+                    if ((buffer.get(offset + FLAGS_OFFSET) & FLAG_LEGACY) != 0) {
+                        legacy++;
+                    }
+                    final int outcome = buffer.get(offset + OUTCOME_OFFSET);
+                    if (outcome >= 0 && outcome < outcomes.length) {
+                        outcomes[outcome]++;
+                    }
+                    versions.merge(buffer.getInt(offset + PROTOCOL_VERSION_OFFSET), 1L, Long::sum);
+                    final int length = Math.min(buffer.get(offset + HOSTNAME_LENGTH_OFFSET) & 0xff, MAX_HOSTNAME_LENGTH);
+                    if (length > 0) {
+                        buffer.position(offset + HOSTNAME_OFFSET);
+                        buffer.get(hostname, 0, length);
+                        hostnames.merge(new String(hostname, 0, length, StandardCharsets.UTF_8), 1L, Long::sum);
+                    }
+                }
+            }
+        }
+
+        System.out.printf("Records: %d in %d segment(s)\n", records, files.size());
+        if (records == 0) {
+            return;
+        }
+        System.out.printf("Time span: %tF %<tT - %tF %<tT\n", firstTimestamp, lastTimestamp);
+        System.out.printf("Legacy: %d (%.2f%%)\n", legacy, percentage(legacy, records));
+        System.out.println("Outcomes:");
+        for (int i = 0; i < outcomes.length; i++) {
+            System.out.printf("  %-14s %10d (%.2f%%)\n", OUTCOMES[i], outcomes[i], percentage(outcomes[i], records));
+        }
+        System.out.println("Protocol versions:");
+        printTop(versions, records);
+        System.out.println("Hostnames:");
+        printTop(hostnames, records);
+    }
+
+    private static <K> void printTop(Map<K, Long> counts, long total) {
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<K, Long>comparingByValue().reversed())
+                .limit(TOP_ENTRIES)
+                .forEach(entry -> System.out.printf("  %-40s %10d (%.2f%%)\n", entry.getKey(), entry.getValue(),
+                        percentage(entry.getValue(), total)));
+        if (counts.size() > TOP_ENTRIES) {
+            System.out.printf("  ... and %d more\n", counts.size() - TOP_ENTRIES);
+        }
+    }
+
+    private static double percentage(long value, long total) {
+        return value * 100.0 / total;
+    }
+
+    private PingyAccessLogReader() {
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A immutable path compressed binary radix (patricia) trie that maps
+ * ipv4 and ipv6 prefixes to either {@link #ALLOW} or {@link #BLOCK}.
+ * <p>
+ * All the nodes are stored in primitive arrays so that lookups don't
+ * allocate and a large amount of prefixes can be stored compactly.
+ * The longest matching prefix decides whether an address is blocked.
+ */
+public final class PingyAddressTrie {
+
+    public static final byte NONE = 0;
+    public static final byte ALLOW = 1;
+    public static final byte BLOCK = 2;
+
+    private static final int NO_CHILD = -1;
+
+    private static final int ROOT_V4 = 0;
+    private static final int ROOT_V6 = 1;
+
+    /**
+     * Whether the hash code of a {@link Inet4Address} is the address itself.
+     * This is the case in the openjdk, but it's not part of the contract.
+     */
+    static final boolean HASH_CODE_IS_ADDRESS = isHashCodeAddress();
+
+    private static boolean isHashCodeAddress() {
+        try {
+            for (String address : new String[] { "0.0.0.0", "127.0.0.1", "192.168.1.1", "255.255.255.255" }) {
+                final InetAddress inetAddress = InetAddress.getByName(address);
+                if (inetAddress.hashCode() != toInt(inetAddress.getAddress(), 0)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    /**
+     * An empty trie, doesn't block anything.
+     */
+    public static final PingyAddressTrie EMPTY = new Builder().build();
+
+    /**
+     * Loads a trie from the block and allow list files. Each line of the
+     * files contains an address or a prefix in cidr notation, empty lines
+     * and lines starting with {@code #} are ignored. The allow list
+     * wins if the same prefix is in both lists.
+     *
+     * @param blockList The block list file, or null
+     * @param allowList The allow list file, or null
+     * @return The trie
+     * @throws IOException If a file couldn't be read or contains a invalid entry
+     */
+    public static PingyAddressTrie load(Path blockList, Path allowList) throws IOException {
+        final Builder builder = new Builder();
+        if (blockList != null) {
+            load(builder, blockList, BLOCK);
+        }
+        if (allowList != null) {
+            load(builder, allowList, ALLOW);
+        }
+        return builder.build();
+    }
+
+    private static void load(Builder builder, Path file, byte value) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    builder.add(line, value);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid entry at line " + lineNumber + " in " + file + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private final long[] keysHigh;
+    private final long[] keysLow;
+    private final byte[] lengths;
+    private final byte[] values;
+    private final int[] children;
+    private final int size;
+
+    private PingyAddressTrie(Builder builder) {
+        this.size = builder.size;
+        this.keysHigh = Arrays.copyOf(builder.keysHigh, this.size);
+        this.keysLow = Arrays.copyOf(builder.keysLow, this.size);
+        this.lengths = Arrays.copyOf(builder.lengths, this.size);
+        this.values = Arrays.copyOf(builder.values, this.size);
+        this.children = Arrays.copyOf(builder.children, this.size * 2);
+    }
+
+    /**
+     * Gets the amount of nodes in this trie.
+     *
+     * @return The amount of nodes
+     */
+    public int getNodeCount() {
+        return this.size;
+    }
+
+    /**
+     * Gets whether the specified {@link InetAddress} is blocked.
+     *
+     * @param address The address
+     * @return Whether the address is blocked
+     */
+    public boolean isBlocked(InetAddress address) {
+        return lookup(address) == BLOCK;
+    }
+
+    /**
+     * Gets the value of the longest prefix that matches
+     * the specified {@link InetAddress}.
+     *
+     * @param address The address
+     * @return The value, {@link #NONE} if there is no match
+     */
+    public byte lookup(InetAddress address) {
+        if (address instanceof Inet4Address) {
+            // Unlike getAddress the hash code doesn't copy the address into
+            // a new array, it's only used if it's verified to be the address
+            return this.lookupV4(HASH_CODE_IS_ADDRESS ? address.hashCode() : toInt(address.getAddress(), 0));
+        }
+        final byte[] bytes = address.getAddress();
+        return this.lookupV6(toLong(bytes, 0), toLong(bytes, 8));
+    }
+
+    /**
+     * Gets the value of the longest prefix that matches the ipv4 address.
+     *
+     * @param address The address
+     * @return The value, {@link #NONE} if there is no match
+     */
+    public byte lookupV4(int address) {
+        return this.lookup(ROOT_V4, 32, (long) address << 32, 0L);
+    }
+
+    /**
+     * Gets the value of the longest prefix that matches the ipv6 address.
+     *
+     * @param high The upper 64 bits of the address
+     * @param low The lower 64 bits of the address
+     * @return The value, {@link #NONE} if there is no match
+     */
+    public byte lookupV6(long high, long low) {
+        return this.lookup(ROOT_V6, 128, high, low);
+    }
+
+    private byte lookup(int node, int maxLength, long high, long low) {
+        byte result = this.values[node];
+        int length;
+        while ((length = this.lengths[node] & 0xff) < maxLength) {
+            final int child = this.children[(node << 1) | bitAt(high, low, length)];
+            if (child == NO_CHILD || !matches(high, low, this.keysHigh[child], this.keysLow[child], this.lengths[child] & 0xff)) {
+                break;
+            }
+            node = child;
+            if (this.values[node] != NONE) {
+                result = this.values[node];
+            }
+        }
+        return result;
+    }
+
+    private static int bitAt(long high, long low, int index) {
+        return (int) (index < 64 ? high >>> (63 - index) : low >>> (127 - index)) & 1;
+    }
+
+    private static long mask(int length) {
+        return length <= 0 ? 0L : length >= 64 ? -1L : -1L << (64 - length);
+    }
+
+    private static boolean matches(long high, long low, long keyHigh, long keyLow, int length) {
+        return ((high ^ keyHigh) & mask(length)) == 0 && ((low ^ keyLow) & mask(length - 64)) == 0;
+    }
+
+    private static int commonPrefixLength(long high1, long low1, long high2, long low2) {
+        final long high = high1 ^ high2;
+        if (high != 0) {
+            return Long.numberOfLeadingZeros(high);
+        }
+        return 64 + Long.numberOfLeadingZeros(low1 ^ low2);
+    }
+
+    private static int toInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16 |
+                (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+    }
+
+    private static long toLong(byte[] bytes, int offset) {
+        return (toInt(bytes, offset) & 0xffffffffL) << 32 | (toInt(bytes, offset + 4) & 0xffffffffL);
+    }
+
+    public static final class Builder {
+
+        private long[] keysHigh = new long[16];
+        private long[] keysLow = new long[16];
+        private byte[] lengths = new byte[16];
+        private byte[] values = new byte[16];
+        private int[] children = new int[32];
+        private int size;
+
+        public Builder() {
+            // The roots of the ipv4 and ipv6 tries
+            this.newNode(0L, 0L, 0, NONE);
+            this.newNode(0L, 0L, 0, NONE);
+        }
+
+        /**
+         * Adds a address or a prefix in cidr notation, for
+         * example {@code 192.168.0.0/16} or {@code 2001:db8::/32}.
+         *
+         * @param cidr The address or prefix
+         * @param value The value, {@link #ALLOW} or {@link #BLOCK}
+         * @return This builder, for chaining
+         */
+        public Builder add(String cidr, byte value) {
+            final int index = cidr.indexOf('/');
+            final String host = index == -1 ? cidr : cidr.substring(0, index);
+            // Only accept literals, host names would trigger a dns lookup
+            for (int i = 0; i < host.length(); i++) {
+                final char c = host.charAt(i);
+                if (Character.digit(c, 16) == -1 && c != '.' && c != ':') {
+                    throw new IllegalArgumentException("Invalid address: " + host);
+                }
+            }
+            final InetAddress address;
+            try {
+                address = InetAddress.getByName(host);
+            } catch (UnknownHostException e) {
+                throw new IllegalArgumentException("Invalid address: " + host);
+            }
+            final int maxLength = address instanceof Inet4Address ? 32 : 128;
+            int length = maxLength;
+            if (index != -1) {
+                try {
+                    length = Integer.parseInt(cidr.substring(index + 1));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid prefix length: " + cidr);
+                }
+                if (length < 0 || length > maxLength) {
+                    throw new IllegalArgumentException("Invalid prefix length: " + cidr);
+                }
+            }
+            return this.add(address, length, value);
+        }
+
+        /**
+         * Adds a prefix.
+         *
+         * @param address The address
+         * @param length The prefix length
+         * @param value The value, {@link #ALLOW} or {@link #BLOCK}
+         * @return This builder, for chaining
+         */
+        public Builder add(InetAddress address, int length, byte value) {
+            if (value != ALLOW && value != BLOCK) {
+                throw new IllegalArgumentException("Unsupported value: " + value);
+            }
+            final byte[] bytes = address.getAddress();
+            if (address instanceof Inet4Address) {
+                this.insert(ROOT_V4, (long) toInt(bytes, 0) << 32, 0L, length, value);
+            } else {
+                this.insert(ROOT_V6, toLong(bytes, 0), toLong(bytes, 8), length, value);
+            }
+            return this;
+        }
+
+        private void insert(int node, long high, long low, int length, byte value) {
+            high &= mask(length);
+            low &= mask(length - 64);
+            while (true) {
+                final int nodeLength = this.lengths[node] & 0xff;
+                if (nodeLength == length) {
+                    this.values[node] = value;
+                    return;
+                }
+                final int slot = (node << 1) | bitAt(high, low, nodeLength);
+                final int child = this.children[slot];
+                if (child == NO_CHILD) {
+                    // Create the node first, the children array may be replaced when it grows
+                    final int newNode = this.newNode(high, low, length, value);
+                    this.children[slot] = newNode;
+                    return;
+                }
+                final int childLength = this.lengths[child] & 0xff;
+                final int common = Math.min(Math.min(length, childLength),
+                        commonPrefixLength(high, low, this.keysHigh[child], this.keysLow[child]));
+                if (common == childLength) {
+                    node = child;
+                    continue;
+                }
+                // Split the edge to the child at the first differing bit
+                final int split = this.newNode(high & mask(common), low & mask(common - 64), common, NONE);
+                this.children[slot] = split;
+                this.children[(split << 1) | bitAt(this.keysHigh[child], this.keysLow[child], common)] = child;
+                if (common == length) {
+                    this.values[split] = value;
+                } else {
+                    final int newNode = this.newNode(high, low, length, value);
+                    this.children[(split << 1) | bitAt(high, low, common)] = newNode;
+                }
+                return;
+            }
+        }
+
+        private int newNode(long high, long low, int length, byte value) {
+            if (this.size == this.lengths.length) {
+                final int capacity = this.size << 1;
+                this.keysHigh = Arrays.copyOf(this.keysHigh, capacity);
+                this.keysLow = Arrays.copyOf(this.keysLow, capacity);
+                this.lengths = Arrays.copyOf(this.lengths, capacity);
+                this.values = Arrays.copyOf(this.values, capacity);
+                this.children = Arrays.copyOf(this.children, capacity << 1);
+            }
+            final int node = this.size++;
+            this.keysHigh[node] = high;
+            this.keysLow[node] = low;
+            this.lengths[node] = (byte) length;
+            this.values[node] = value;
+            this.children[node << 1] = NO_CHILD;
+            this.children[(node << 1) | 1] = NO_CHILD;
+            return node;
+        }
+
+        /**
+         * Builds the immutable {@link PingyAddressTrie}.
+         *
+         * @return The trie
+         */
+        public PingyAddressTrie build() {
+            return new PingyAddressTrie(this);
+        }
+    }
+}
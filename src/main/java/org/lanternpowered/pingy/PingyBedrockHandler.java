@@ -0,0 +1,134 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramPacket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Answers the raknet unconnected pings of bedrock edition clients.
+ * <p>
+ * The pong is encoded once, only the ping time has to be filled in
+ * for every response. Responses are flushed once per read loop so
+ * that the native transport can send them in batches.
+ */
+@ChannelHandler.Sharable
+public final class PingyBedrockHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+
+    private static final int UNCONNECTED_PING = 0x01;
+    private static final int UNCONNECTED_PING_OPEN_CONNECTIONS = 0x02;
+    private static final int UNCONNECTED_PONG = 0x1c;
+
+    /**
+     * The magic that is used to identify offline raknet messages.
+     */
+    private static final byte[] MAGIC = {
+            (byte) 0x00, (byte) 0xff, (byte) 0xff, (byte) 0x00, (byte) 0xfe, (byte) 0xfe, (byte) 0xfe, (byte) 0xfe,
+            (byte) 0xfd, (byte) 0xfd, (byte) 0xfd, (byte) 0xfd, (byte) 0x12, (byte) 0x34, (byte) 0x56, (byte) 0x78,
+    };
+
+    /**
+     * The offset of the ping time in the pong message.
+     */
+    private static final int TIME_OFFSET = 1;
+
+    private final ByteBuf pong;
+
+    public PingyBedrockHandler(PingyProperties properties) {
+        final long serverId = ThreadLocalRandom.current().nextLong();
+
+        final String[] motd = properties.getLegacyMessageOfTheDay().split("\n", 2);
+        final String serverInfo = String.format("MCPE;%s;%s;%s;%s;%s;%s;%s;%s;%s;%s;%s;",
+                escape(motd[0]), properties.getBedrockProtocolVersion(), escape(properties.getOutdatedMessage()), 0, 0,
+                Long.toUnsignedString(serverId), motd.length > 1 ? escape(motd[1]) : "", "Survival", 1,
+                properties.getBedrockPort(), properties.getBedrockPort());
+        final byte[] serverInfoData = serverInfo.getBytes(StandardCharsets.UTF_8);
+
+        final ByteBuf pong = Unpooled.directBuffer(1 + 8 + 8 + MAGIC.length + 2 + serverInfoData.length);
+        pong.writeByte(UNCONNECTED_PONG);
+        pong.writeLong(0L); // Ping time
+        pong.writeLong(serverId);
+        pong.writeBytes(MAGIC);
+        pong.writeShort(serverInfoData.length);
+        pong.writeBytes(serverInfoData);
+        this.pong = Unpooled.unreleasableBuffer(pong);
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) throws Exception {
+        final ByteBuf msg = packet.content();
+        // Message id, ping time, magic and the client id
+        if (msg.readableBytes() < 1 + 8 + MAGIC.length + 8) {
+            return;
+        }
+        final int index = msg.readerIndex();
+        final int messageId = msg.getUnsignedByte(index);
+        if ((messageId != UNCONNECTED_PING && messageId != UNCONNECTED_PING_OPEN_CONNECTIONS) ||
+                !isMagic(msg, index + 1 + 8)) {
+            return;
+        }
+        final ByteBuf pong = ctx.alloc().directBuffer(this.pong.readableBytes());
+        pong.writeBytes(this.pong, this.pong.readerIndex(), this.pong.readableBytes());
+        pong.setLong(TIME_OFFSET, msg.getLong(index + 1));
+        ctx.write(new DatagramPacket(pong, packet.sender()));
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        ctx.flush();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        // The channel is shared by all the clients, so don't close it
+        Pingy.debug(cause::printStackTrace);
+    }
+
+    private static boolean isMagic(ByteBuf buf, int index) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buf.getByte(index + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Escapes the separator characters in the value.
+     *
+     * @param value The value
+     * @return The escaped value
+     */
+    private static String escape(String value) {
+        return value.replace(";", "\\;");
+    }
+}
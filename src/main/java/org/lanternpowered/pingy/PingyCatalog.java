@@ -0,0 +1,392 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A memory mapped catalog of host profiles, keyed by the hostname that
+ * the client used to connect. The catalog is build by the
+ * {@link PingyCatalogBuilder}.
+ * <p>
+ * The index file contains fixed width entries sorted by the hash of the
+ * hostname, which are binary searched without being loaded into the heap.
+ * The data file contains the status json (without favicon) and the
+ * favicon of every host. Profiles are only loaded on the first handshake
+ * for their host, the encoded responses are kept in a {@link PingyResponseCache}.
+ */
+public final class PingyCatalog {
+
+    static final String INDEX_FILE = "catalog.idx";
+    static final String DATA_FILE = "catalog.dat";
+
+    static final int MAGIC = 0x50474343;
+    static final int VERSION = 1;
+
+    /**
+     * The size of the index header: magic, version and the entry count.
+     */
+    static final int HEADER_SIZE = 4 + 4 + 4;
+
+    /**
+     * The size of a index entry: hash, offset and length.
+     */
+    static final int ENTRY_SIZE = 8 + 8 + 4;
+
+    /**
+     * The data file is mapped in chunks of this size,
+     * records never cross the chunk boundaries.
+     */
+    static final int CHUNK_BITS = 30;
+    static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+    /**
+     * Opens the catalog in the specified directory.
+     *
+     * @param directory The directory
+     * @param cacheSize The maximum size of the cached responses in bytes
+     * @return The catalog
+     * @throws IOException If the catalog couldn't be opened
+     */
+    public static PingyCatalog open(Path directory, long cacheSize) throws IOException {
+        final MappedByteBuffer index;
+        try (FileChannel channel = FileChannel.open(directory.resolve(INDEX_FILE))) {
+            index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (index.capacity() < HEADER_SIZE || index.getInt(0) != MAGIC) {
+            throw new IOException("Invalid catalog index file.");
+        }
+        if (index.getInt(4) != VERSION) {
+            throw new IOException("Unsupported catalog version: " + index.getInt(4));
+        }
+        final int count = index.getInt(8);
+        if (index.capacity() < HEADER_SIZE + (long) count * ENTRY_SIZE) {
+            throw new IOException("The catalog index file is truncated.");
+        }
+        final MappedByteBuffer[] chunks;
+        try (FileChannel channel = FileChannel.open(directory.resolve(DATA_FILE))) {
+            final long size = channel.size();
+            chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+            for (int i = 0; i < chunks.length; i++) {
+                final long position = (long) i << CHUNK_BITS;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, size - position));
+            }
+        }
+        return new PingyCatalog(index, count, chunks, new PingyResponseCache(cacheSize));
+    }
+
+    /**
+     * The amount of slots of the negative cache for unknown hosts.
+     */
+    static final int UNKNOWN_HOSTS_SIZE = 4096;
+
+    /**
+     * Normalizes the hostname that was received in the handshake. Everything
+     * after a null character (like the forge marker) and trailing dots
+     * are removed and the hostname is converted to lower case.
+     *
+     * @param hostname The hostname
+     * @return The normalized hostname
+     */
+    static byte[] normalize(byte[] hostname) {
+        final byte[] normalized = new byte[normalizedLength(hostname)];
+        for (int i = 0; i < normalized.length; i++) {
+            normalized[i] = toLowerCase(hostname[i]);
+        }
+        return normalized;
+    }
+
+    private static int normalizedLength(byte[] hostname) {
+        int length = 0;
+        while (length < hostname.length && hostname[length] != 0) {
+            length++;
+        }
+        while (length > 0 && hostname[length - 1] == '.') {
+            length--;
+        }
+        return length;
+    }
+
+    private static byte toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /**
+     * Hashes the normalized hostname (64 bit fnv-1a).
+     *
+     * @param hostname The normalized hostname
+     * @return The hash
+     */
+    static long hash(byte[] hostname) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : hostname) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Hashes the hostname as if it was normalized first,
+     * without allocating the normalized hostname.
+     *
+     * @param hostname The hostname as received in the handshake
+     * @return The hash
+     */
+    static long normalizedHash(byte[] hostname) {
+        final int length = normalizedLength(hostname);
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash ^= toLowerCase(hostname[i]) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Gets whether the hostname matches the normalized
+     * hostname once it is normalized.
+     *
+     * @param normalized The normalized hostname
+     * @param hostname The hostname as received in the handshake
+     * @return Whether the hostnames match
+     */
+    static boolean matches(byte[] normalized, byte[] hostname) {
+        if (normalizedLength(hostname) != normalized.length) {
+            return false;
+        }
+        for (int i = 0; i < normalized.length; i++) {
+            if (toLowerCase(hostname[i]) != normalized[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final MappedByteBuffer index;
+    private final int count;
+    private final MappedByteBuffer[] chunks;
+    private final PingyResponseCache cache;
+    private final LongAdder unknownHosts = new LongAdder();
+
+    /**
+     * The hashes of recently requested hostnames that aren't in the catalog, so
+     * that scanners don't cost a lookup every time. The catalog never changes,
+     * so the entries don't expire, they are only overwritten by other hosts.
+     */
+    private final AtomicLongArray unknownHostHashes = new AtomicLongArray(UNKNOWN_HOSTS_SIZE);
+
+    private PingyCatalog(MappedByteBuffer index, int count, MappedByteBuffer[] chunks, PingyResponseCache cache) {
+        this.index = index;
+        this.count = count;
+        this.chunks = chunks;
+        this.cache = cache;
+    }
+
+    /**
+     * Gets the status response for the specified hostname.
+     *
+     * @param hostname The hostname as received in the handshake
+     * @param favicon Whether the favicon should be included
+     * @return A retained duplicate of the response frame, or null if the host is unknown
+     */
+    ByteBuf getStatusResponse(byte[] hostname, boolean favicon) {
+        final long hash = normalizedHash(hostname);
+        final int slot = (int) (hash ^ (hash >>> 32)) & (UNKNOWN_HOSTS_SIZE - 1);
+        // A hash of zero can't be distinguished from a empty slot
+        if (hash != 0 && this.unknownHostHashes.get(slot) == hash) {
+            this.unknownHosts.increment();
+            return null;
+        }
+        final ByteBuf cached = this.cache.get(hash, hostname, favicon);
+        if (cached != null) {
+            return cached;
+        }
+        final byte[] normalized = normalize(hostname);
+        final PingyStatusResponse response = this.load(normalized, hash);
+        if (response == null) {
+            this.unknownHostHashes.lazySet(slot, hash);
+            this.unknownHosts.increment();
+            return null;
+        }
+        return this.cache.put(hash, normalized, response, favicon);
+    }
+
+    private PingyStatusResponse load(byte[] hostname, long hash) {
+        // Find the first entry with the hash
+        int low = 0;
+        int high = this.count;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (this.index.getLong(HEADER_SIZE + mid * ENTRY_SIZE) < hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        // Multiple hosts can have the same hash
+        for (int i = low; i < this.count; i++) {
+            final int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            if (this.index.getLong(entry) != hash) {
+                break;
+            }
+            final long offset = this.index.getLong(entry + 8);
+            final PingyStatusResponse response = this.load(hostname,
+                    this.chunks[(int) (offset >>> CHUNK_BITS)], (int) (offset & (CHUNK_SIZE - 1)));
+            if (response != null) {
+                return response;
+            }
+        }
+        return null;
+    }
+
+    private PingyStatusResponse load(byte[] hostname, MappedByteBuffer chunk, int position) {
+        final int hostnameLength = chunk.getShort(position) & 0xffff;
+        if (hostnameLength != hostname.length) {
+            return null;
+        }
+        position += 2;
+        for (int i = 0; i < hostnameLength; i++) {
+            if (chunk.get(position + i) != hostname[i]) {
+                return null;
+            }
+        }
+        position += hostnameLength;
+        final int jsonLength = chunk.getInt(position);
+        final ByteBuf json = slice(chunk, position + 4, jsonLength);
+        position += 4 + jsonLength;
+        final int faviconLength = chunk.getInt(position);
+        final ByteBuf favicon = faviconLength == 0 ? null : slice(chunk, position + 4, faviconLength);
+        return PingyStatusResponse.of(json, favicon);
+    }
+
+    private static ByteBuf slice(MappedByteBuffer chunk, int position, int length) {
+        // Use a duplicate, the chunk is shared between threads
+        final ByteBuffer buffer = chunk.duplicate();
+        buffer.position(position).limit(position + length);
+        return Unpooled.wrappedBuffer(buffer.slice());
+    }
+
+    /**
+     * Releases all the cached responses.
+     */
+    void close() {
+        this.cache.close();
+    }
+
+    /**
+     * Gets the amount of hosts in the catalog.
+     *
+     * @return The amount of hosts
+     */
+    public int getHostCount() {
+        return this.count;
+    }
+
+    /**
+     * Gets the amount of requests for hosts that aren't in the catalog.
+     *
+     * @return The amount of unknown host requests
+     */
+    public long getUnknownHosts() {
+        return this.unknownHosts.sum();
+    }
+
+    /**
+     * Gets the amount of requests that were served from the cache.
+     *
+     * @return The amount of cache hits
+     */
+    public long getCacheHits() {
+        return this.cache.getHits();
+    }
+
+    /**
+     * Gets the amount of requests for hosts in the catalog
+     * that weren't served from the cache.
+     *
+     * @return The amount of cache misses
+     */
+    public long getCacheMisses() {
+        return this.cache.getMisses();
+    }
+
+    /**
+     * Gets the ratio of requests that were served from the cache.
+     *
+     * @return The cache hit rate, between 0 and 1
+     */
+    public double getCacheHitRate() {
+        final long hits = this.cache.getHits();
+        final long total = hits + this.cache.getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Gets the amount of responses that were evicted from the cache.
+     *
+     * @return The amount of evictions
+     */
+    public long getCacheEvictions() {
+        return this.cache.getEvictions();
+    }
+
+    /**
+     * Gets the amount of responses in the cache.
+     *
+     * @return The amount of cached responses
+     */
+    public int getCachedResponses() {
+        return this.cache.getCount();
+    }
+
+    /**
+     * Gets the size of the cached responses in bytes.
+     *
+     * @return The size of the cached responses
+     */
+    public long getCacheSize() {
+        return this.cache.getSize();
+    }
+
+    /**
+     * Gets the amount of bytes that weren't sent because the
+     * favicon was left out of the responses of the hosts.
+     *
+     * @return The amount of saved bytes
+     */
+    public long getSavedFaviconBytes() {
+        return this.cache.getSavedFaviconBytes();
+    }
+}
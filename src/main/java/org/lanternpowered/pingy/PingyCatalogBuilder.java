@@ -0,0 +1,163 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A offline tool that builds a {@link PingyCatalog} from a directory with
+ * host profiles. Every profile is named after its hostname, for example
+ * {@code play.example.com.json}, and uses the same format as the pingy
+ * properties file. Only the settings of the status response are used,
+ * the favicon path is resolved against the profile directory.
+ */
+public final class PingyCatalogBuilder {
+
+    private static final Gson GSON = new Gson();
+
+    private static final String PROFILE_EXTENSION = ".json";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: PingyCatalogBuilder <profile directory> <catalog directory>");
+            System.exit(1);
+            return;
+        }
+        final int count = build(Paths.get(args[0]), Paths.get(args[1]));
+        Pingy.info("Built the catalog with " + count + " hosts.");
+    }
+
+    /**
+     * Builds the catalog from the host profiles in the input directory.
+     *
+     * @param input The directory with the host profiles
+     * @param output The directory the catalog will be written to
+     * @return The amount of hosts in the catalog
+     * @throws IOException If the catalog couldn't be built
+     */
+    public static int build(Path input, Path output) throws IOException {
+        Files.createDirectories(output);
+
+        long[] hashes = new long[1024];
+        long[] offsets = new long[1024];
+        int[] lengths = new int[1024];
+        int count = 0;
+
+        long offset = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(input, "*" + PROFILE_EXTENSION);
+                DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(output.resolve(PingyCatalog.DATA_FILE))))) {
+            for (Path file : stream) {
+                final String fileName = file.getFileName().toString();
+                final byte[] hostname = PingyCatalog.normalize(fileName.substring(0, fileName.length() - PROFILE_EXTENSION.length())
+                        .getBytes(StandardCharsets.UTF_8));
+
+                final PingyProperties properties;
+                try (BufferedReader reader = Files.newBufferedReader(file)) {
+                    properties = GSON.fromJson(reader, PingyProperties.class);
+                }
+                properties.loadFavicon(input);
+
+                final byte[] json = GSON.toJson(PingyStatusResponse.toJson(properties)).getBytes(StandardCharsets.UTF_8);
+                final byte[] favicon = properties.getFaviconData().map(value -> value.getBytes(StandardCharsets.UTF_8)).orElse(new byte[0]);
+
+                final int length = 2 + hostname.length + 4 + json.length + 4 + favicon.length;
+                if (length > PingyCatalog.CHUNK_SIZE) {
+                    throw new IOException("The profile of " + fileName + " is too large.");
+                }
+                // Records may not cross the boundary of a mapped chunk
+                final long chunkRemaining = PingyCatalog.CHUNK_SIZE - (offset & (PingyCatalog.CHUNK_SIZE - 1));
+                if (length > chunkRemaining) {
+                    writePadding(data, chunkRemaining);
+                    offset += chunkRemaining;
+                }
+
+                data.writeShort(hostname.length);
+                data.write(hostname);
+                data.writeInt(json.length);
+                data.write(json);
+                data.writeInt(favicon.length);
+                data.write(favicon);
+
+                if (count == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, count << 1);
+                    offsets = Arrays.copyOf(offsets, count << 1);
+                    lengths = Arrays.copyOf(lengths, count << 1);
+                }
+                hashes[count] = PingyCatalog.hash(hostname);
+                offsets[count] = offset;
+                lengths[count] = length;
+                count++;
+
+                offset += length;
+            }
+        }
+
+        final long[] finalHashes = hashes;
+        final Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> finalHashes[i]));
+
+        try (DataOutputStream index = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(output.resolve(PingyCatalog.INDEX_FILE))))) {
+            index.writeInt(PingyCatalog.MAGIC);
+            index.writeInt(PingyCatalog.VERSION);
+            index.writeInt(count);
+            for (int i : order) {
+                index.writeLong(hashes[i]);
+                index.writeLong(offsets[i]);
+                index.writeInt(lengths[i]);
+            }
+        }
+        return count;
+    }
+
+    private static void writePadding(OutputStream outputStream, long length) throws IOException {
+        final byte[] padding = new byte[8192];
+        while (length > 0) {
+            final int size = (int) Math.min(length, padding.length);
+            outputStream.write(padding, 0, size);
+            length -= size;
+        }
+    }
+
+    private PingyCatalogBuilder() {
+    }
+}
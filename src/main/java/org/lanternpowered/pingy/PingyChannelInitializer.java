@@ -0,0 +1,172 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.unix.DomainSocketChannel;
+import io.netty.handler.codec.haproxy.HAProxyMessageDecoder;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@link ChannelInitializer} that sets up the pingy pipeline
+ * for a newly accepted connection. This can be mounted on any
+ * listener, which allows pingy to be embedded in existing servers.
+ */
+@ChannelHandler.Sharable
+public final class PingyChannelInitializer extends ChannelInitializer<Channel> {
+
+    private static final RecvByteBufAllocator RECV_BYTE_BUF_ALLOCATOR = new AdaptiveRecvByteBufAllocator(64, 512, 2048);
+
+    private final PingyProperties properties;
+    private final PingyStatusProvider statusProvider;
+    private final LongAdder blockedConnections = new LongAdder();
+    private final LongAdder[] rejectedConnections = new LongAdder[PingyTrafficClassifier.Rejection.values().length];
+
+    private volatile PingyAddressTrie addressTrie = PingyAddressTrie.EMPTY;
+    private volatile PingyAccessLog accessLog;
+    private volatile PingyEventLoopSampler eventLoopSampler;
+
+    public PingyChannelInitializer(PingyProperties properties) {
+        this.statusProvider = new PingyStatusProvider(properties);
+        this.properties = properties;
+        for (int i = 0; i < this.rejectedConnections.length; i++) {
+            this.rejectedConnections[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Sets the {@link PingyAddressTrie} that is used to block
+     * connections, this can be swapped at any time.
+     *
+     * @param addressTrie The address trie
+     */
+    public void setAddressTrie(PingyAddressTrie addressTrie) {
+        this.addressTrie = addressTrie;
+    }
+
+    /**
+     * Gets the {@link PingyStatusProvider} that is used
+     * by the connections.
+     *
+     * @return The status provider
+     */
+    public PingyStatusProvider getStatusProvider() {
+        return this.statusProvider;
+    }
+
+    /**
+     * Sets the {@link PingyAccessLog} that new connections
+     * will be logged to, may be null to disable it.
+     *
+     * @param accessLog The access log
+     */
+    public void setAccessLog(PingyAccessLog accessLog) {
+        this.accessLog = accessLog;
+    }
+
+    /**
+     * Sets the {@link PingyEventLoopSampler} that counts the
+     * connections per event loop, may be null to disable it.
+     *
+     * @param eventLoopSampler The event loop sampler
+     */
+    public void setEventLoopSampler(PingyEventLoopSampler eventLoopSampler) {
+        this.eventLoopSampler = eventLoopSampler;
+    }
+
+    /**
+     * Gets the amount of connections that were
+     * blocked by the {@link PingyAddressTrie}.
+     *
+     * @return The amount of blocked connections
+     */
+    public long getBlockedConnections() {
+        return this.blockedConnections.sum();
+    }
+
+    /**
+     * Gets the amount of connections that were rejected
+     * by the {@link PingyTrafficClassifier}.
+     *
+     * @param rejection The kind of rejection
+     * @return The amount of rejected connections
+     */
+    public long getRejectedConnections(PingyTrafficClassifier.Rejection rejection) {
+        return this.rejectedConnections[rejection.ordinal()].sum();
+    }
+
+    @Override
+    protected void initChannel(Channel ch) throws Exception {
+        final PingyEventLoopSampler eventLoopSampler = this.eventLoopSampler;
+        if (eventLoopSampler != null) {
+            eventLoopSampler.connectionAccepted(ch.eventLoop());
+        }
+        // Only small messages are expected, keep the read buffers small
+        ch.config().setRecvByteBufAllocator(RECV_BYTE_BUF_ALLOCATOR);
+        ch.pipeline().addLast(new ReadTimeoutHandler(20));
+        if (ch instanceof DomainSocketChannel && this.properties.isUnixSocketProxyProtocol()) {
+            // The rest of the pipeline is set up once the address of the client is known
+            ch.pipeline()
+                    .addLast(new HAProxyMessageDecoder())
+                    .addLast(new PingyProxyHandler(this));
+            return;
+        }
+        this.initPipeline(ch, ch.remoteAddress(), false);
+    }
+
+    /**
+     * Sets up the pingy handlers of the pipeline, unless
+     * the address of the client is blocked.
+     *
+     * @param ch The channel
+     * @param address The address of the client
+     * @param proxied Whether the address was received through the proxy protocol
+     */
+    void initPipeline(Channel ch, SocketAddress address, boolean proxied) {
+        if (address instanceof InetSocketAddress &&
+                this.addressTrie.isBlocked(((InetSocketAddress) address).getAddress())) {
+            this.blockedConnections.increment();
+            final PingyAccessLog accessLog = this.accessLog;
+            if (accessLog != null) {
+                accessLog.log(address, -1, null, -1, false, PingyAccessLog.OUTCOME_BLOCKED);
+            }
+            PingyChannelUtils.closeWithReset(ch);
+            return;
+        }
+        ch.pipeline()
+                .addLast(new PingyTrafficClassifier(this.rejectedConnections))
+                .addLast(new PingyLegacyHandler(this.properties))
+                .addLast(new PingyFramingHandler())
+                .addLast(new PingyHandler(this.properties, this.statusProvider, this.accessLog, proxied));
+    }
+}
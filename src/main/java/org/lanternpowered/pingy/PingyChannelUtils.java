@@ -0,0 +1,82 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOption;
+import io.netty.util.AttributeKey;
+
+import java.net.SocketAddress;
+
+public final class PingyChannelUtils {
+
+    /**
+     * The address of the client that was passed through by a proxy.
+     */
+    static final AttributeKey<SocketAddress> PROXIED_ADDRESS = AttributeKey.valueOf("pingy-proxied-address");
+
+    /**
+     * Gets the address of the client of the {@link Channel}, this is the
+     * address that was passed through by a proxy if there is one.
+     *
+     * @param channel The channel
+     * @return The remote address
+     */
+    public static SocketAddress getRemoteAddress(Channel channel) {
+        final SocketAddress address = channel.attr(PROXIED_ADDRESS).get();
+        return address != null ? address : channel.remoteAddress();
+    }
+
+    /**
+     * Closes the {@link Channel} with a reset instead of the regular
+     * close handshake, this avoids that the connection lingers in the
+     * {@code TIME_WAIT} state. Should only be used for unwanted connections.
+     *
+     * @param channel The channel
+     */
+    public static void closeWithReset(Channel channel) {
+        channel.config().setOption(ChannelOption.SO_LINGER, 0);
+        channel.close();
+    }
+
+    /**
+     * Rejects the connection of the {@link ChannelHandlerContext}, the
+     * outcome is passed to the {@link PingyHandler} and the connection
+     * is closed with a reset.
+     *
+     * @param ctx The channel handler context
+     */
+    public static void reject(ChannelHandlerContext ctx) {
+        final PingyHandler handler = ctx.pipeline().get(PingyHandler.class);
+        if (handler != null) {
+            handler.rejected();
+        }
+        closeWithReset(ctx.channel());
+    }
+
+    private PingyChannelUtils() {
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically schedules a probe on every event loop of a group to measure
+ * how late the event loops are running their tasks. The lag is recorded
+ * in a histogram together with the pending task count and the amount of
+ * connections that every event loop handled.
+ * <p>
+ * The probes run on the event loops themselves, so a sample only costs
+ * a scheduled task per event loop and interval.
+ */
+public final class PingyEventLoopSampler {
+
+    /**
+     * The amount of samples per event loop between the summaries.
+     */
+    private static final int SAMPLES_PER_SUMMARY = 60;
+
+    private final Map<EventExecutor, Probe> probes = new IdentityHashMap<>();
+    private final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+
+    private final PingyHistogram lag = new PingyHistogram();
+    private final PingyHistogram pendingTasks = new PingyHistogram();
+
+    private final long interval;
+    private final long summaryInterval;
+    private final long warnThreshold;
+
+    /**
+     * Constructs a new event loop sampler.
+     *
+     * @param group The event loop group
+     * @param interval The sample interval in milliseconds
+     * @param warnThreshold The lag in milliseconds after which a warning is logged
+     */
+    public PingyEventLoopSampler(EventLoopGroup group, int interval, int warnThreshold) {
+        this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+        this.summaryInterval = this.interval * SAMPLES_PER_SUMMARY;
+        this.warnThreshold = TimeUnit.MILLISECONDS.toNanos(warnThreshold);
+        int index = 0;
+        for (EventExecutor executor : group) {
+            this.probes.put(executor, new Probe(executor, index++));
+        }
+    }
+
+    /**
+     * Starts sampling the event loops.
+     */
+    public void start() {
+        for (Probe probe : this.probes.values()) {
+            probe.nextDeadline = System.nanoTime() + this.interval;
+            this.tasks.add(probe.executor.scheduleWithFixedDelay(probe, this.interval, this.interval, TimeUnit.NANOSECONDS));
+        }
+        this.tasks.add(GlobalEventExecutor.INSTANCE.scheduleAtFixedRate(this::logSummary,
+                this.summaryInterval, this.summaryInterval, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Stops sampling the event loops.
+     */
+    public void stop() {
+        this.tasks.forEach(task -> task.cancel(false));
+        this.tasks.clear();
+    }
+
+    /**
+     * Is called when a connection is accepted by the event loop, this
+     * must be called from the event loop itself.
+     *
+     * @param eventLoop The event loop
+     */
+    void connectionAccepted(EventLoop eventLoop) {
+        final Probe probe = this.probes.get(eventLoop);
+        if (probe != null) {
+            probe.connections++;
+        }
+    }
+
+    /**
+     * Gets the histogram with the event loop lag in microseconds,
+     * the histograms are reset after every summary.
+     *
+     * @return The lag histogram
+     */
+    public PingyHistogram getLag() {
+        return this.lag;
+    }
+
+    /**
+     * Gets the histogram with the pending task count of the event loops.
+     *
+     * @return The pending tasks histogram
+     */
+    public PingyHistogram getPendingTasks() {
+        return this.pendingTasks;
+    }
+
+    private void logSummary() {
+        final PingyHistogram.Snapshot lag = this.lag.snapshot(true);
+        final PingyHistogram.Snapshot pendingTasks = this.pendingTasks.snapshot(true);
+        final StringBuilder connections = new StringBuilder();
+        for (Probe probe : this.probes.values()) {
+            if (connections.length() > 0) {
+                connections.append(", ");
+            }
+            connections.append(probe.sampledConnections);
+        }
+        Pingy.debugInfo(String.format("Event loop lag: p50 %dus, p99 %dus, max %dus; pending tasks p99 %d; connections per event loop: [%s]",
+                lag.getPercentile(0.5), lag.getPercentile(0.99), lag.getMax(), pendingTasks.getPercentile(0.99), connections));
+    }
+
+    private final class Probe implements Runnable {
+
+        private final EventExecutor executor;
+        private final int index;
+
+        // Only accessed from the event loop
+        private long nextDeadline;
+        private long connections;
+        private long lastWarning;
+        private boolean warned;
+        private int suppressedWarnings;
+
+        // The total amount of connections, published for the summary
+        private volatile long sampledConnections;
+
+        private Probe(EventExecutor executor, int index) {
+            this.executor = executor;
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            final long now = System.nanoTime();
+            final long lag = now - this.nextDeadline;
+            // The probe is scheduled with a fixed delay after it completes
+            this.nextDeadline = now + interval;
+            final int pendingTasks = this.executor instanceof SingleThreadEventExecutor ?
+                    ((SingleThreadEventExecutor) this.executor).pendingTasks() : 0;
+            PingyEventLoopSampler.this.lag.record(TimeUnit.NANOSECONDS.toMicros(lag));
+            PingyEventLoopSampler.this.pendingTasks.record(pendingTasks);
+            this.sampledConnections = this.connections;
+            if (lag > warnThreshold) {
+                this.warn(now, lag, pendingTasks);
+            }
+        }
+
+        private void warn(long now, long lag, int pendingTasks) {
+            // Warn at most once per summary interval, a overloaded event loop lags on every sample
+            if (this.warned && now - this.lastWarning < summaryInterval) {
+                this.suppressedWarnings++;
+                return;
+            }
+            String message = String.format("Event loop %d is running %dms behind, %d tasks are pending.",
+                    this.index, TimeUnit.NANOSECONDS.toMillis(lag), pendingTasks);
+            if (this.suppressedWarnings > 0) {
+                message += String.format(" It lagged behind %d more times since the last warning.", this.suppressedWarnings);
+            }
+            this.warned = true;
+            this.lastWarning = now;
+            this.suppressedWarnings = 0;
+            // Log from the global executor, writing to the console would delay the lagging event loop even more
+            final String warning = message;
+            GlobalEventExecutor.INSTANCE.execute(() -> Pingy.warn(warning));
+        }
+    }
+}
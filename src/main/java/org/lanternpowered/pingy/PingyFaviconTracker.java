@@ -0,0 +1,104 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A fixed size lock free set of the addresses that recently received
+ * the favicon. Every address hashes to two slots which hold the last
+ * time a favicon was sent to one of the addresses in that slot, the
+ * address is only considered to be present if both slots are recent
+ * enough. Entries expire on their own, so the memory usage is bounded
+ * no matter how many addresses ping. Colliding addresses may cause an
+ * address that never received the favicon to be skipped until the
+ * slots expire, which is the same as a client with a stale favicon.
+ */
+final class PingyFaviconTracker {
+
+    private final AtomicIntegerArray slots;
+    private final int mask;
+    private final int window;
+    private final long startTime = System.nanoTime();
+
+    /**
+     * Constructs a new favicon tracker.
+     *
+     * @param size The amount of slots, will be rounded up to a power of two
+     * @param window The time in seconds before the favicon is sent again
+     */
+    PingyFaviconTracker(int size, int window) {
+        final int capacity = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+        this.slots = new AtomicIntegerArray(capacity);
+        this.mask = capacity - 1;
+        this.window = window;
+    }
+
+    /**
+     * Gets whether the favicon should be sent to the specified address, the
+     * address will be marked as served if this is the case. The port isn't
+     * taken into account, every connection uses a different one.
+     *
+     * @param address The address
+     * @return Whether the favicon should be sent
+     */
+    boolean shouldSendFavicon(InetAddress address) {
+        final long hash = hash(address);
+        final int first = (int) hash & this.mask;
+        final int second = (int) (hash >>> 32) & this.mask;
+        final int now = this.now();
+        if (this.isRecent(first, now) && this.isRecent(second, now)) {
+            return false;
+        }
+        // Concurrent pings of the same address may both send the favicon, that's fine
+        this.slots.lazySet(first, now);
+        this.slots.lazySet(second, now);
+        return true;
+    }
+
+    private boolean isRecent(int index, int now) {
+        final int served = this.slots.get(index);
+        // A empty slot has a served time of 0
+        return served != 0 && now - served < this.window;
+    }
+
+    private int now() {
+        // Start at 1 to distinguish the slots from empty ones
+        return (int) TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - this.startTime) + 1;
+    }
+
+    private static long hash(InetAddress address) {
+        // Spread the bits, the address hash code is not well distributed
+        long hash = address.hashCode();
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
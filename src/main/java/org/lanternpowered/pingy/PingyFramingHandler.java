@@ -36,6 +36,52 @@
 
 public final class PingyFramingHandler extends ByteToMessageCodec<ByteBuf> {
 
+    /**
+     * The maximum length of a handshake message: message id, protocol
+     * version, hostname, port and the protocol state.
+     */
+    public static final int MAX_HANDSHAKE_LENGTH = 1 + 5 + 2 + 255 * 4 + 2 + 1;
+
+    /**
+     * The maximum length of a status message, the ping message
+     * is the largest one: message id and the payload.
+     */
+    public static final int MAX_STATUS_LENGTH = 1 + 8;
+
+    /**
+     * The maximum amount of bytes that may be buffered, enough for
+     * a handshake and the status messages that follow it.
+     */
+    private static final int MAX_CUMULATION = 3 + MAX_HANDSHAKE_LENGTH + 2 * (1 + MAX_STATUS_LENGTH);
+
+    private final int maxCumulation;
+    private int maxFrameLength;
+
+    public PingyFramingHandler() {
+        this(MAX_HANDSHAKE_LENGTH, MAX_CUMULATION);
+    }
+
+    /**
+     * Constructs a new framing handler with custom limits.
+     *
+     * @param maxFrameLength The maximum frame length
+     * @param maxCumulation The maximum amount of bytes that may be buffered
+     */
+    PingyFramingHandler(int maxFrameLength, int maxCumulation) {
+        this.maxFrameLength = maxFrameLength;
+        this.maxCumulation = maxCumulation;
+    }
+
+    /**
+     * Sets the maximum length of the frames that will be accepted,
+     * this depends on the protocol state.
+     *
+     * @param maxFrameLength The maximum frame length
+     */
+    public void setMaxFrameLength(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
     @Override
     protected void encode(ChannelHandlerContext ctx, ByteBuf buf0, ByteBuf output) throws Exception {
         writeVarInt(output, buf0.readableBytes());
@@ -44,19 +90,28 @@ protected void encode(ChannelHandlerContext ctx, ByteBuf buf0, ByteBuf output) t
 
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf buf, List<Object> output) throws Exception {
-        while (readableVarInt(buf)) {
-            buf.markReaderIndex();
-
-            final int length = readVarInt(buf);
-            if (buf.readableBytes() < length) {
-                buf.resetReaderIndex();
-                break;
-            }
-
-            final ByteBuf msg = ctx.alloc().buffer(length);
-            buf.readBytes(msg, length);
-
-            output.add(msg);
+        if (buf.readableBytes() > this.maxCumulation) {
+            buf.skipBytes(buf.readableBytes());
+            PingyChannelUtils.reject(ctx);
+            return;
+        }
+        if (!readableVarInt(buf)) {
+            return;
+        }
+        final int index = buf.readerIndex();
+        final int length = readVarInt(buf);
+        // Reject the frame before anything is allocated for it
+        if (length < 0 || length > this.maxFrameLength) {
+            buf.skipBytes(buf.readableBytes());
+            PingyChannelUtils.reject(ctx);
+            return;
+        }
+        if (buf.readableBytes() < length) {
+            buf.readerIndex(index);
+            return;
         }
+        // Only decode one frame at the time, the handler may change the
+        // maximum frame length before the next frame is decoded
+        output.add(buf.readRetainedSlice(length));
     }
 }
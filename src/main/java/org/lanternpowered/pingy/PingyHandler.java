@@ -32,7 +32,6 @@
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelFuture;
@@ -41,19 +40,30 @@
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.DecoderException;
 
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.nio.charset.StandardCharsets;
-import java.util.Optional;
-import java.util.UUID;
 import java.util.function.Consumer;
 
 public final class PingyHandler extends SimpleChannelInboundHandler<ByteBuf> {
 
     private final static Gson GSON = new Gson();
     private final PingyProperties properties;
+    private final PingyStatusProvider statusProvider;
+    private final PingyAccessLog accessLog;
+
+    // Whether the handler is added after the proxy protocol header was received
+    private final boolean proxied;
 
     private ProtocolState state = ProtocolState.HANDSHAKE;
     private int protocolVersion = -1;
 
+    // The access log entry of the connection
+    private byte[] hostname;
+    private int nextState = -1;
+    private boolean legacy;
+    private byte outcome = PingyAccessLog.OUTCOME_DISCONNECTED;
+
     private enum ProtocolState {
         HANDSHAKE,
         PLAY,
@@ -69,24 +79,69 @@ public static ProtocolState fromId(int id) {
     }
 
     public PingyHandler(PingyProperties properties) {
+        this(properties, new PingyStatusProvider(properties), null);
+    }
+
+    public PingyHandler(PingyProperties properties, PingyStatusProvider statusProvider, PingyAccessLog accessLog) {
+        this(properties, statusProvider, accessLog, false);
+    }
+
+    PingyHandler(PingyProperties properties, PingyStatusProvider statusProvider, PingyAccessLog accessLog, boolean proxied) {
+        this.statusProvider = statusProvider;
         this.properties = properties;
+        this.accessLog = accessLog;
+        this.proxied = proxied;
+    }
+
+    /**
+     * Is called when the connection was handled
+     * by the {@link PingyLegacyHandler}.
+     *
+     * @param outcome The access log outcome
+     */
+    void handledLegacy(byte outcome) {
+        this.legacy = true;
+        this.outcome = outcome;
+    }
+
+    /**
+     * Is called when the connection was rejected
+     * by the {@link PingyTrafficClassifier}.
+     */
+    void rejected() {
+        this.outcome = PingyAccessLog.OUTCOME_REJECTED;
     }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-        cause.printStackTrace();
+        this.outcome = PingyAccessLog.OUTCOME_ERROR;
+        Pingy.debug(cause::printStackTrace);
+        ctx.close();
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        // The channel is already active once the proxy header was received,
+        // the other connections are logged in channelActive
+        if (this.proxied) {
+            Pingy.info(PingyChannelUtils.getRemoteAddress(ctx.channel()) + " connected to the server.");
+        }
     }
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
         super.channelActive(ctx);
-        Pingy.info(ctx.channel().remoteAddress() + " connected to the server.");
+        Pingy.info(PingyChannelUtils.getRemoteAddress(ctx.channel()) + " connected to the server.");
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         super.channelInactive(ctx);
-        Pingy.info(ctx.channel().remoteAddress() + " disconnected from the server.");
+        Pingy.info(PingyChannelUtils.getRemoteAddress(ctx.channel()) + " disconnected from the server.");
+        if (this.accessLog != null) {
+            this.accessLog.log(PingyChannelUtils.getRemoteAddress(ctx.channel()), this.protocolVersion,
+                    this.hostname, this.nextState, this.legacy, this.outcome);
+        }
     }
 
     @Override
@@ -125,21 +180,24 @@ private void handleHandshake(ChannelHandlerContext ctx, ByteBuf msg) {
             throw new DecoderException("Received unexpected handshake message");
         }
         this.protocolVersion = readVarInt(msg); // Protocol version
-        readByteArray(msg, 255 * 4); // Hostname
+        this.hostname = readByteArray(msg, 255 * 4); // Hostname
         msg.readShort(); // Port
 
-        final ProtocolState state = ProtocolState.fromId(readVarInt(msg)); // Protocol state
+        this.nextState = readVarInt(msg);
+        final ProtocolState state = ProtocolState.fromId(this.nextState); // Protocol state
         switch (state) {
             case HANDSHAKE:
             case PLAY:
                 ctx.channel().close();
                 throw new DecoderException("Received unexpected handshake message");
             case LOGIN:
+                this.outcome = PingyAccessLog.OUTCOME_LOGIN;
                 sendMessage(ctx, 0x00, buf -> writeByteArray(buf, GSON.toJson(fixJson(this.properties.getDisconnectMessage()))
                         .getBytes(StandardCharsets.UTF_8))).addListener(ChannelFutureListener.CLOSE);
                 return;
             case STATUS:
                 this.state = state;
+                ctx.pipeline().get(PingyFramingHandler.class).setMaxFrameLength(PingyFramingHandler.MAX_STATUS_LENGTH);
                 return;
             default:
                 throw new IllegalStateException("Unsupported protocol state: " + state);
@@ -147,48 +205,16 @@ private void handleHandshake(ChannelHandlerContext ctx, ByteBuf msg) {
     }
 
     private void handleStatusPing(ChannelHandlerContext ctx, ByteBuf msg) {
+        this.outcome = PingyAccessLog.OUTCOME_PING;
         sendMessage(ctx, 0x01, buf -> buf.writeLong(msg.readLong()));
     }
 
     private void handleStatusRequest(ChannelHandlerContext ctx, ByteBuf msg) {
-        final JsonObject rootObject = new JsonObject();
-        final JsonObject versionObject = new JsonObject();
-        versionObject.addProperty("name", this.properties.getOutdatedMessage());
-        versionObject.addProperty("protocol", -1);
-
-        final Optional<String> optTooltip = this.properties.getOutdatedMessageTooltip();
-        if (optTooltip.isPresent()) {
-            final JsonObject playersObject = new JsonObject();
-            playersObject.addProperty("max", 0);
-            playersObject.addProperty("online", 0);
-            final JsonArray array = new JsonArray();
-            for (String name : optTooltip.get().split("\n")) {
-                final JsonObject playerEntry = new JsonObject();
-                playerEntry.addProperty("name", name);
-                playerEntry.addProperty("id", UUID.randomUUID().toString());
-                array.add(playerEntry);
-            }
-            playersObject.add("sample", array);
-            rootObject.add("players", playersObject);
-        }
-
-        rootObject.add("version", versionObject);
-        rootObject.add("description", this.properties.getMessageOfTheDay());
-        this.properties.getFaviconData().ifPresent(data -> rootObject.addProperty("favicon", data));
-
-        String serverType = this.properties.getServerType().toUpperCase();
-        if (serverType.equals("FORGE")) {
-            serverType = "FML";
-        }
-
-        // Forge Mod Loader info
-        final JsonObject fmlObject = new JsonObject();
-        fmlObject.addProperty("type", serverType);
-        fmlObject.add("modList", GSON.toJsonTree(this.properties.getModList()));
-
-        rootObject.add("modinfo", fmlObject);
-
-        sendMessage(ctx, 0x00, buf -> writeByteArray(buf, GSON.toJson(rootObject).getBytes(StandardCharsets.UTF_8)));
+        this.outcome = PingyAccessLog.OUTCOME_STATUS;
+        final SocketAddress address = PingyChannelUtils.getRemoteAddress(ctx.channel());
+        // The response is already framed, so skip the framing handler
+        ctx.pipeline().context(PingyFramingHandler.class).writeAndFlush(this.statusProvider.getStatusResponse(this.hostname,
+                address instanceof InetSocketAddress ? ((InetSocketAddress) address).getAddress() : null));
     }
 
     private static ChannelFuture sendMessage(ChannelHandlerContext ctx, int messageId, Consumer<ByteBuf> bufConsumer) {
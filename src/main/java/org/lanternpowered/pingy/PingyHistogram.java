@@ -0,0 +1,121 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram with power of two buckets, which makes
+ * recording cheap enough to be used on the event loops.
+ */
+public final class PingyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Records the value, negative values are recorded as 0.
+     *
+     * @param value The value
+     */
+    public void record(long value) {
+        this.counts.incrementAndGet(value <= 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * Takes a snapshot of the recorded values.
+     *
+     * @param reset Whether the histogram should be reset
+     * @return The snapshot
+     */
+    public Snapshot snapshot(boolean reset) {
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = reset ? this.counts.getAndSet(i, 0) : this.counts.get(i);
+        }
+        return new Snapshot(counts);
+    }
+
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+
+        private Snapshot(long[] counts) {
+            long count = 0;
+            for (long value : counts) {
+                count += value;
+            }
+            this.counts = counts;
+            this.count = count;
+        }
+
+        /**
+         * Gets the amount of recorded values.
+         *
+         * @return The amount of values
+         */
+        public long getCount() {
+            return this.count;
+        }
+
+        /**
+         * Gets the upper bound of the bucket that contains the percentile.
+         *
+         * @param percentile The percentile, between 0 and 1
+         * @return The upper bound of the value at the percentile
+         */
+        public long getPercentile(double percentile) {
+            final long target = (long) Math.ceil(percentile * this.count);
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += this.counts[i];
+                if (count >= target && count > 0) {
+                    return upperBound(i);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Gets the upper bound of the largest recorded value.
+         *
+         * @return The upper bound of the largest value
+         */
+        public long getMax() {
+            for (int i = BUCKETS - 1; i >= 0; i--) {
+                if (this.counts[i] != 0) {
+                    return upperBound(i);
+                }
+            }
+            return 0;
+        }
+
+        private static long upperBound(int bucket) {
+            return bucket == 0 ? 0 : bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+        }
+    }
+}
@@ -27,69 +27,180 @@
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.concurrent.ScheduledFuture;
 
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-public class PingyLegacyHandler extends ChannelInboundHandlerAdapter {
+/**
+ * Detects and answers the legacy ping and join messages of clients before
+ * 1.7. The first bytes are buffered until it can be decided whether they
+ * are a legacy message, the buffered bytes are forwarded to the next
+ * handler if they aren't.
+ */
+public class PingyLegacyHandler extends ByteToMessageDecoder {
+
+    /**
+     * The start of a 1.6 ping message: the ping message id, the
+     * payload, the plugin message id and the "MC|PingHost" channel.
+     */
+    private static final byte[] PING_HOST_PREFIX;
+
+    static {
+        final byte[] channel = "MC|PingHost".getBytes(StandardCharsets.UTF_16BE);
+        PING_HOST_PREFIX = new byte[5 + channel.length];
+        PING_HOST_PREFIX[0] = (byte) 0xfe;
+        PING_HOST_PREFIX[1] = 0x01;
+        PING_HOST_PREFIX[2] = (byte) 0xfa;
+        PING_HOST_PREFIX[3] = (byte) ((channel.length >> 1) >> 8);
+        PING_HOST_PREFIX[4] = (byte) (channel.length >> 1);
+        System.arraycopy(channel, 0, PING_HOST_PREFIX, 5, channel.length);
+    }
+
+    /**
+     * The time in milliseconds to wait for the rest of a ping message
+     * after a single ping byte, clients before 1.4 only send that byte.
+     */
+    private static final int PING_GRACE_TIME = 100;
+
+    private static final int MAX_USERNAME_LENGTH = 16;
+    private static final int MAX_HOST_LENGTH = 255;
+
+    /**
+     * The result of the detection if the bytes aren't a legacy message.
+     */
+    private static final int NOT_LEGACY = 0;
+
+    /**
+     * The result of the detection if there aren't enough bytes to decide.
+     */
+    private static final int UNDECIDED = 1;
+
+    /**
+     * The result of the detection for a ping message of 1.4 or newer.
+     */
+    private static final int PING = 2;
+
+    /**
+     * The result of the detection for a complete join message.
+     */
+    private static final int JOIN = 3;
 
     private final PingyProperties properties;
 
+    private ScheduledFuture<?> pingTimeout;
+    private boolean handled;
+
     public PingyLegacyHandler(PingyProperties properties) {
         this.properties = properties;
     }
 
     @Override
-    public void channelRead(ChannelHandlerContext ctx, Object msg0) throws Exception {
-        final ByteBuf msg = (ByteBuf) msg0;
-
-        boolean legacy = false;
-        msg.markReaderIndex();
-        try {
-            // Try first as a legacy ping message
-            int messageId = msg.readUnsignedByte();
-            // Make sure that old clients don't attempt to login
-            if (messageId == 0x02) {
-                legacy = this.tryHandleLegacyJoin(ctx, msg);
-            } else if (messageId == 0xfe) {
-                legacy = this.tryHandleLegacyPing(ctx, msg);
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        if (this.handled) {
+            // The connection is being closed
+            in.skipBytes(in.readableBytes());
+            return;
+        }
+        final int result = detect(in);
+        if (result == UNDECIDED) {
+            if (this.pingTimeout == null && in.readableBytes() == 1 && in.getUnsignedByte(in.readerIndex()) == 0xfe) {
+                this.pingTimeout = ctx.executor().schedule(() -> this.handlePing(ctx, false),
+                        PING_GRACE_TIME, TimeUnit.MILLISECONDS);
             }
-        } catch (Exception e) {
+            return;
         }
-        if (!legacy) {
-            msg.resetReaderIndex();
+        this.cancelPingTimeout();
+        if (result == NOT_LEGACY) {
+            // The buffered bytes will be forwarded to the next handler
             ctx.pipeline().remove(this);
-            ctx.fireChannelRead(msg);
+            return;
+        }
+        in.skipBytes(in.readableBytes());
+        if (result == PING) {
+            this.handlePing(ctx, true);
         } else {
-            msg.release();
+            this.handleJoin(ctx);
         }
     }
 
-    private boolean tryHandleLegacyPing(ChannelHandlerContext ctx, ByteBuf msg) {
-        int readable = msg.readableBytes();
-
-        // Full message, contains more info
-        boolean full = false;
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        this.cancelPingTimeout();
+    }
 
-        if (readable > 0) {
-            // Is always 1
-            if (msg.readUnsignedByte() != 1) {
-                return false;
-            }
-            full = true;
+    private void cancelPingTimeout() {
+        if (this.pingTimeout != null) {
+            this.pingTimeout.cancel(false);
+            this.pingTimeout = null;
         }
+    }
 
-        if (readable > 1) {
-            if (msg.readUnsignedByte() != 0xfa) {
-                return false;
+    /**
+     * Detects whether the buffered bytes are a legacy message,
+     * without modifying the buffer.
+     *
+     * @param buf The buffer with the first bytes
+     * @return {@link #NOT_LEGACY}, {@link #UNDECIDED}, {@link #PING} or {@link #JOIN}
+     */
+    private static int detect(ByteBuf buf) {
+        final int index = buf.readerIndex();
+        final int readable = buf.readableBytes();
+        final int first = buf.getUnsignedByte(index);
+        if (first == 0xfe) {
+            if (readable == 1) {
+                return UNDECIDED;
+            }
+            // Clients of 1.4 and 1.5 only send the message id and the payload,
+            // 1.6 clients follow it up with a "MC|PingHost" plugin message
+            if (readable == 2) {
+                return buf.getByte(index + 1) == PING_HOST_PREFIX[1] ? PING : NOT_LEGACY;
             }
-            byte[] bytes = new byte[msg.readShort() << 1];
-            msg.readBytes(bytes);
-            if (!new String(bytes, StandardCharsets.UTF_16BE).equals("MC|PingHost")){
-                return false;
+            final int length = Math.min(readable, PING_HOST_PREFIX.length);
+            for (int i = 1; i < length; i++) {
+                if (buf.getByte(index + i) != PING_HOST_PREFIX[i]) {
+                    return NOT_LEGACY;
+                }
             }
+            return length == PING_HOST_PREFIX.length ? PING : UNDECIDED;
+        } else if (first == 0x02) {
+            // The message id, protocol version, username, host address and port
+            int position = 2;
+            if (readable < position + 2) {
+                return UNDECIDED;
+            }
+            final int usernameLength = buf.getShort(index + position);
+            if (usernameLength < 0 || usernameLength > MAX_USERNAME_LENGTH) {
+                return NOT_LEGACY;
+            }
+            position += 2 + (usernameLength << 1);
+            if (readable < position + 2) {
+                return UNDECIDED;
+            }
+            final int hostLength = buf.getShort(index + position);
+            if (hostLength < 0 || hostLength > MAX_HOST_LENGTH) {
+                return NOT_LEGACY;
+            }
+            position += 2 + (hostLength << 1) + 4;
+            if (readable < position) {
+                return UNDECIDED;
+            }
+            // The client waits for a response, so nothing may follow the message
+            return readable == position ? JOIN : NOT_LEGACY;
         }
+        return NOT_LEGACY;
+    }
 
+    /**
+     * Handles a legacy ping message.
+     *
+     * @param ctx The channel handler context
+     * @param full Whether the client expects the response format of 1.4 and newer
+     */
+    private void handlePing(ChannelHandlerContext ctx, boolean full) {
+        this.pingTimeout = null;
         final String motd = getFirstLine(this.properties.getLegacyMessageOfTheDay());
         if (full) {
             sendLegacyDisconnectMessage(ctx, String.format("\u00A7%s\0%s\0%s\0%s\0%s\0%s",
@@ -98,30 +209,25 @@ private boolean tryHandleLegacyPing(ChannelHandlerContext ctx, ByteBuf msg) {
             sendLegacyDisconnectMessage(ctx, String.format("%s\u00A7%s\u00A7%s",
                     motd, -1, -1));
         }
+        this.handled(ctx, PingyAccessLog.OUTCOME_STATUS);
+    }
 
-        return true;
+    /**
+     * Handles a legacy join message.
+     *
+     * @param ctx The channel handler context
+     */
+    private void handleJoin(ChannelHandlerContext ctx) {
+        sendLegacyDisconnectMessage(ctx, this.properties.getLegacyDisconnectMessage());
+        this.handled(ctx, PingyAccessLog.OUTCOME_LOGIN);
     }
 
-    private boolean tryHandleLegacyJoin(ChannelHandlerContext ctx, ByteBuf msg) {
-        msg.readByte(); // Protocol version
-        int value = msg.readShort();
-        // Check the length
-        if (value < 0 || value > 16) {
-            return false;
+    private void handled(ChannelHandlerContext ctx, byte outcome) {
+        this.handled = true;
+        final PingyHandler handler = ctx.pipeline().get(PingyHandler.class);
+        if (handler != null) {
+            handler.handledLegacy(outcome);
         }
-        msg.readBytes(value << 1); // Username
-        value = msg.readShort();
-        // Check the length
-        if (value < 0 || value > 255) {
-            return false;
-        }
-        msg.readBytes(value << 1); // Host address
-        msg.readInt(); // Port
-        if (msg.readableBytes() > 0) {
-            return false;
-        }
-        sendLegacyDisconnectMessage(ctx, this.properties.getLegacyDisconnectMessage());
-        return true;
     }
 
     /**
@@ -63,6 +63,33 @@ public class PingyProperties {
     @Expose @SerializedName("use-epoll-when-available")
     private boolean useEpollWhenAvailable = true;
 
+    /**
+     * The time in seconds that the kernel waits for the first data
+     * of a connection before it's accepted, 0 disables it. Only
+     * supported when epoll is used.
+     */
+    @Expose @SerializedName("tcp-defer-accept")
+    private int tcpDeferAccept = 0;
+
+    /**
+     * The queue length of pending tcp fast open requests, 0 disables
+     * tcp fast open. Only supported when epoll is used.
+     */
+    @Expose @SerializedName("tcp-fast-open")
+    private int tcpFastOpen = 0;
+
+    /**
+     * The socket receive buffer size in bytes, 0 uses the system default.
+     */
+    @Expose @SerializedName("receive-buffer-size")
+    private int receiveBufferSize = 0;
+
+    /**
+     * The socket send buffer size in bytes, 0 uses the system default.
+     */
+    @Expose @SerializedName("send-buffer-size")
+    private int sendBufferSize = 0;
+
     /**
      * The message of the day. Supports minecraft chat format.
      */
@@ -129,6 +156,181 @@ public class PingyProperties {
     @Expose @SerializedName("mod-list")
     private String[] modList = new String[0];
 
+    /**
+     * The path of the block list file, may be empty to disable
+     * the block list. Every line contains an address or a prefix
+     * in cidr notation.
+     */
+    @Expose @SerializedName("block-list")
+    private String blockList = "";
+
+    /**
+     * The path of the allow list file, may be empty to disable
+     * the allow list. Prefixes in this list override the ones
+     * in the block list.
+     */
+    @Expose @SerializedName("allow-list")
+    private String allowList = "";
+
+    /**
+     * The interval in seconds in which the block and allow list files
+     * will be checked for changes. 0 disables reloading.
+     */
+    @Expose @SerializedName("address-lists-reload-interval")
+    private int addressListsReloadInterval = 30;
+
+    /**
+     * Whether the bedrock edition ping responder should be enabled.
+     */
+    @Expose @SerializedName("bedrock-enabled")
+    private boolean bedrockEnabled = false;
+
+    /**
+     * The udp port to use for the bedrock edition ping responder.
+     */
+    @Expose @SerializedName("bedrock-port")
+    private int bedrockPort = 19132;
+
+    /**
+     * The protocol version that is send to bedrock edition clients.
+     */
+    @Expose @SerializedName("bedrock-protocol-version")
+    private int bedrockProtocolVersion = -1;
+
+    /**
+     * Whether the query protocol responder should be enabled.
+     */
+    @Expose @SerializedName("query-enabled")
+    private boolean queryEnabled = false;
+
+    /**
+     * The udp port to use for the query protocol responder.
+     */
+    @Expose @SerializedName("query-port")
+    private int queryPort = 25565;
+
+    /**
+     * The time in seconds that a query challenge token remains valid.
+     */
+    @Expose @SerializedName("query-challenge-expiry")
+    private int queryChallengeExpiry = 30;
+
+    /**
+     * The amount of query challenge tokens that can be tracked at once,
+     * this bounds the memory that is used by the challenge tokens.
+     */
+    @Expose @SerializedName("query-challenge-table-size")
+    private int queryChallengeTableSize = 65536;
+
+    /**
+     * The directory the binary access log is written to, may be
+     * empty to disable the access log.
+     */
+    @Expose @SerializedName("access-log-directory")
+    private String accessLogDirectory = "";
+
+    /**
+     * The size of a single access log segment file in megabytes.
+     */
+    @Expose @SerializedName("access-log-segment-size")
+    private int accessLogSegmentSize = 64;
+
+    /**
+     * The maximum amount of access log segment files, the oldest
+     * ones are deleted. May be 0 to keep all the segment files.
+     */
+    @Expose @SerializedName("access-log-max-segments")
+    private int accessLogMaxSegments = 32;
+
+    /**
+     * The directory of the host profile catalog, may be empty to disable
+     * the catalog. The catalog can be built with the catalog builder.
+     */
+    @Expose @SerializedName("catalog-directory")
+    private String catalogDirectory = "";
+
+    /**
+     * The maximum size in megabytes of the cached status responses
+     * of the hosts in the catalog.
+     */
+    @Expose @SerializedName("catalog-cache-size")
+    private int catalogCacheSize = 64;
+
+    /**
+     * The interval in milliseconds in which the event loops are
+     * sampled, 0 disables the sampler.
+     */
+    @Expose @SerializedName("event-loop-sampler-interval")
+    private int eventLoopSamplerInterval = 1000;
+
+    /**
+     * The event loop lag in milliseconds after which a warning is logged.
+     */
+    @Expose @SerializedName("event-loop-lag-warn-threshold")
+    private int eventLoopLagWarnThreshold = 100;
+
+    /**
+     * The time in seconds in which the favicon isn't sent again to an
+     * address that already received it, 0 always sends the favicon.
+     */
+    @Expose @SerializedName("favicon-resend-interval")
+    private int faviconResendInterval = 0;
+
+    /**
+     * The amount of slots that are used to track the addresses that
+     * recently received the favicon, this bounds the used memory.
+     */
+    @Expose @SerializedName("favicon-tracker-size")
+    private int faviconTrackerSize = 65536;
+
+    /**
+     * Whether the tcp listener should be enabled, it can be disabled
+     * if only the unix domain socket listener is used.
+     */
+    @Expose @SerializedName("tcp-enabled")
+    private boolean tcpEnabled = true;
+
+    /**
+     * The path of the unix domain socket to listen on, may be empty
+     * to disable the listener. Requires epoll.
+     */
+    @Expose @SerializedName("unix-socket-path")
+    private String unixSocketPath = "";
+
+    /**
+     * Whether the connections of the unix domain socket start with a
+     * proxy protocol header (v1 or v2) with the address of the client.
+     */
+    @Expose @SerializedName("unix-socket-proxy-protocol")
+    private boolean unixSocketProxyProtocol = false;
+
+    /**
+     * The addresses (host:port) of the servers whose players should be
+     * shown, the player counts and samples of the servers are combined.
+     * The static values are shown if none of the servers are reachable.
+     */
+    @Expose @SerializedName("upstreams")
+    private String[] upstreams = new String[0];
+
+    /**
+     * The interval in milliseconds in which the upstream servers are pinged.
+     */
+    @Expose @SerializedName("upstream-poll-interval")
+    private int upstreamPollInterval = 5000;
+
+    /**
+     * The maximum random delay in milliseconds that is added to the
+     * poll interval, this spreads the pings of multiple instances.
+     */
+    @Expose @SerializedName("upstream-poll-jitter")
+    private int upstreamPollJitter = 1000;
+
+    /**
+     * The time in milliseconds after which a upstream server is considered down.
+     */
+    @Expose @SerializedName("upstream-timeout")
+    private int upstreamTimeout = 3000;
+
     private String faviconData;
 
     public void loadFavicon(Path directory) throws IOException {
@@ -174,6 +376,22 @@ public int getPort() {
         return this.port;
     }
 
+    public int getTcpDeferAccept() {
+        return this.tcpDeferAccept;
+    }
+
+    public int getTcpFastOpen() {
+        return this.tcpFastOpen;
+    }
+
+    public int getReceiveBufferSize() {
+        return this.receiveBufferSize;
+    }
+
+    public int getSendBufferSize() {
+        return this.sendBufferSize;
+    }
+
     public JsonElement getMessageOfTheDay() {
         return this.messageOfTheDay;
     }
@@ -213,4 +431,108 @@ public boolean isUseEpollWhenAvailable() {
     public String[] getModList() {
         return this.modList;
     }
+
+    public Optional<String> getBlockList() {
+        return this.blockList.isEmpty() ? Optional.empty() : Optional.of(this.blockList);
+    }
+
+    public Optional<String> getAllowList() {
+        return this.allowList.isEmpty() ? Optional.empty() : Optional.of(this.allowList);
+    }
+
+    public int getAddressListsReloadInterval() {
+        return this.addressListsReloadInterval;
+    }
+
+    public boolean isBedrockEnabled() {
+        return this.bedrockEnabled;
+    }
+
+    public int getBedrockPort() {
+        return this.bedrockPort;
+    }
+
+    public int getBedrockProtocolVersion() {
+        return this.bedrockProtocolVersion;
+    }
+
+    public boolean isQueryEnabled() {
+        return this.queryEnabled;
+    }
+
+    public int getQueryPort() {
+        return this.queryPort;
+    }
+
+    public int getQueryChallengeExpiry() {
+        return this.queryChallengeExpiry;
+    }
+
+    public int getQueryChallengeTableSize() {
+        return this.queryChallengeTableSize;
+    }
+
+    public Optional<String> getAccessLogDirectory() {
+        return this.accessLogDirectory.isEmpty() ? Optional.empty() : Optional.of(this.accessLogDirectory);
+    }
+
+    public int getAccessLogSegmentSize() {
+        return this.accessLogSegmentSize;
+    }
+
+    public int getAccessLogMaxSegments() {
+        return this.accessLogMaxSegments;
+    }
+
+    public Optional<String> getCatalogDirectory() {
+        return this.catalogDirectory.isEmpty() ? Optional.empty() : Optional.of(this.catalogDirectory);
+    }
+
+    public int getCatalogCacheSize() {
+        return this.catalogCacheSize;
+    }
+
+    public int getEventLoopSamplerInterval() {
+        return this.eventLoopSamplerInterval;
+    }
+
+    public int getEventLoopLagWarnThreshold() {
+        return this.eventLoopLagWarnThreshold;
+    }
+
+    public int getFaviconResendInterval() {
+        return this.faviconResendInterval;
+    }
+
+    public int getFaviconTrackerSize() {
+        return this.faviconTrackerSize;
+    }
+
+    public boolean isTcpEnabled() {
+        return this.tcpEnabled;
+    }
+
+    public Optional<String> getUnixSocketPath() {
+        return this.unixSocketPath.isEmpty() ? Optional.empty() : Optional.of(this.unixSocketPath);
+    }
+
+    public boolean isUnixSocketProxyProtocol() {
+        return this.unixSocketProxyProtocol;
+    }
+
+    public String[] getUpstreams() {
+        return this.upstreams;
+    }
+
+    public int getUpstreamPollInterval() {
+        return this.upstreamPollInterval;
+    }
+
+    public int getUpstreamPollJitter() {
+        return this.upstreamPollJitter;
+    }
+
+    public int getUpstreamTimeout() {
+        return this.upstreamTimeout;
+    }
 }
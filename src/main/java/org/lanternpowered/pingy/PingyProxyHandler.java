@@ -0,0 +1,72 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.haproxy.HAProxyMessage;
+import io.netty.util.NetUtil;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * Reads the address of the client from the proxy protocol header and
+ * sets up the rest of the pipeline for it. The bytes that follow the
+ * header are passed to the added handlers.
+ */
+final class PingyProxyHandler extends SimpleChannelInboundHandler<HAProxyMessage> {
+
+    private final PingyChannelInitializer channelInitializer;
+
+    PingyProxyHandler(PingyChannelInitializer channelInitializer) {
+        this.channelInitializer = channelInitializer;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, HAProxyMessage msg) throws Exception {
+        ctx.pipeline().remove(this);
+        SocketAddress address = ctx.channel().remoteAddress();
+        // Local connections of the proxy itself, like health checks, don't have a source address
+        final String sourceAddress = msg.sourceAddress();
+        if (sourceAddress != null) {
+            // The address is always numeric, this avoids a dns lookup
+            final byte[] bytes = NetUtil.createByteArrayFromIpAddressString(sourceAddress);
+            if (bytes != null) {
+                address = new InetSocketAddress(InetAddress.getByAddress(bytes), msg.sourcePort());
+                ctx.channel().attr(PingyChannelUtils.PROXIED_ADDRESS).set(address);
+            }
+        }
+        this.channelInitializer.initPipeline(ctx.channel(), address, true);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        // A invalid proxy protocol header
+        Pingy.debug(cause::printStackTrace);
+        PingyChannelUtils.closeWithReset(ctx.channel());
+    }
+}
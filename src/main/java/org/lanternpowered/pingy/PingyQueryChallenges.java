@@ -0,0 +1,102 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size lock free table with the query challenge tokens that
+ * were issued to source addresses. Each address hashes to a single
+ * slot which holds the token and the time it was issued, so the memory
+ * usage is bounded no matter how many addresses send handshakes. A
+ * colliding address overwrites the slot, which only forces the
+ * previous address to do a new handshake.
+ */
+final class PingyQueryChallenges {
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final int expiry;
+    private final long startTime = System.nanoTime();
+
+    /**
+     * Constructs new query challenges.
+     *
+     * @param size The amount of slots, will be rounded up to a power of two
+     * @param expiry The time in seconds before a token expires
+     */
+    PingyQueryChallenges(int size, int expiry) {
+        final int capacity = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+        this.slots = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        this.expiry = expiry;
+    }
+
+    /**
+     * Issues a new challenge token for the specified address.
+     *
+     * @param address The address
+     * @return The challenge token
+     */
+    int issue(InetSocketAddress address) {
+        // Some clients don't expect negative tokens
+        final int token = ThreadLocalRandom.current().nextInt() & Integer.MAX_VALUE;
+        this.slots.set(this.index(address), ((long) token << 32) | (this.now() & 0xffffffffL));
+        return token;
+    }
+
+    /**
+     * Gets whether the challenge token is valid for the specified address.
+     *
+     * @param address The address
+     * @param token The challenge token
+     * @return Whether the token is valid
+     */
+    boolean isValid(InetSocketAddress address, int token) {
+        final long value = this.slots.get(this.index(address));
+        final int issued = (int) value;
+        // A empty slot has a issue time of 0
+        return issued != 0 && (int) (value >>> 32) == token && this.now() - issued <= this.expiry;
+    }
+
+    private int now() {
+        // Start at 1 to distinguish the slots from empty ones
+        return (int) TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - this.startTime) + 1;
+    }
+
+    private int index(InetSocketAddress address) {
+        // Spread the bits, the address hash code is not well distributed
+        int hash = address.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash & this.mask;
+    }
+}
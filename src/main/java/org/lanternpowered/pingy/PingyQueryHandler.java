@@ -0,0 +1,180 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramPacket;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Answers the gamespy4 query protocol that is used by server
+ * lists and monitoring tools.
+ * <p>
+ * The basic and full stat payloads are encoded once, stats are only
+ * send to addresses that completed the handshake, this keeps the
+ * server from being abused to reflect large responses.
+ */
+@ChannelHandler.Sharable
+public final class PingyQueryHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+
+    private static final int MAGIC = 0xfefd;
+
+    private static final int TYPE_HANDSHAKE = 0x09;
+    private static final int TYPE_STAT = 0x00;
+
+    private final PingyQueryChallenges challenges;
+    private final LongAdder rejectedRequests = new LongAdder();
+
+    private final ByteBuf basicStat;
+    private final ByteBuf fullStat;
+
+    public PingyQueryHandler(PingyProperties properties) {
+        this.challenges = new PingyQueryChallenges(properties.getQueryChallengeTableSize(),
+                properties.getQueryChallengeExpiry());
+
+        final String motd = getFirstLine(properties.getLegacyMessageOfTheDay());
+        final String hostIp = properties.getIp().isEmpty() ? "0.0.0.0" : properties.getIp();
+        final int hostPort = properties.getPort();
+
+        final ByteBuf basicStat = Unpooled.directBuffer();
+        writeString(basicStat, motd);
+        writeString(basicStat, "SMP");
+        writeString(basicStat, "world");
+        writeString(basicStat, "0"); // Online players
+        writeString(basicStat, "0"); // Max players
+        basicStat.writeShortLE(hostPort);
+        writeString(basicStat, hostIp);
+        this.basicStat = Unpooled.unreleasableBuffer(basicStat);
+
+        final ByteBuf fullStat = Unpooled.directBuffer();
+        // The split number header, it's expected by the clients
+        writeString(fullStat, "splitnum");
+        fullStat.writeByte(0x80);
+        fullStat.writeByte(0x00);
+        writeString(fullStat, "hostname");
+        writeString(fullStat, motd);
+        writeString(fullStat, "gametype");
+        writeString(fullStat, "SMP");
+        writeString(fullStat, "game_id");
+        writeString(fullStat, "MINECRAFT");
+        writeString(fullStat, "version");
+        writeString(fullStat, properties.getOutdatedMessage());
+        writeString(fullStat, "plugins");
+        writeString(fullStat, "");
+        writeString(fullStat, "map");
+        writeString(fullStat, "world");
+        writeString(fullStat, "numplayers");
+        writeString(fullStat, "0");
+        writeString(fullStat, "maxplayers");
+        writeString(fullStat, "0");
+        writeString(fullStat, "hostport");
+        writeString(fullStat, Integer.toString(hostPort));
+        writeString(fullStat, "hostip");
+        writeString(fullStat, hostIp);
+        fullStat.writeByte(0x00); // End of the key values
+        fullStat.writeByte(0x01);
+        writeString(fullStat, "player_");
+        fullStat.writeByte(0x00);
+        fullStat.writeByte(0x00); // End of the players
+        this.fullStat = Unpooled.unreleasableBuffer(fullStat);
+    }
+
+    /**
+     * Gets the amount of stat requests that were
+     * rejected because of a invalid challenge token.
+     *
+     * @return The amount of rejected requests
+     */
+    public long getRejectedRequests() {
+        return this.rejectedRequests.sum();
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) throws Exception {
+        final ByteBuf msg = packet.content();
+        // Magic, type and the session id
+        if (msg.readableBytes() < 2 + 1 + 4 || msg.readUnsignedShort() != MAGIC) {
+            return;
+        }
+        final int type = msg.readUnsignedByte();
+        final int sessionId = msg.readInt();
+        final InetSocketAddress sender = packet.sender();
+        if (type == TYPE_HANDSHAKE) {
+            final byte[] token = Integer.toString(this.challenges.issue(sender)).getBytes(StandardCharsets.US_ASCII);
+            final ByteBuf buf = ctx.alloc().directBuffer(1 + 4 + token.length + 1);
+            buf.writeByte(TYPE_HANDSHAKE);
+            buf.writeInt(sessionId);
+            buf.writeBytes(token);
+            buf.writeByte(0x00);
+            ctx.write(new DatagramPacket(buf, sender));
+        } else if (type == TYPE_STAT) {
+            if (msg.readableBytes() < 4 || !this.challenges.isValid(sender, msg.readInt())) {
+                this.rejectedRequests.increment();
+                return;
+            }
+            // The full stat request is padded with 4 bytes
+            final ByteBuf stat = msg.readableBytes() >= 4 ? this.fullStat : this.basicStat;
+            final ByteBuf buf = ctx.alloc().directBuffer(1 + 4 + stat.readableBytes());
+            buf.writeByte(TYPE_STAT);
+            buf.writeInt(sessionId);
+            buf.writeBytes(stat, stat.readerIndex(), stat.readableBytes());
+            ctx.write(new DatagramPacket(buf, sender));
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        ctx.flush();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        // The channel is shared by all the clients, so don't close it
+        Pingy.debug(cause::printStackTrace);
+    }
+
+    private static void writeString(ByteBuf buf, String value) {
+        buf.writeBytes(value.getBytes(StandardCharsets.ISO_8859_1));
+        buf.writeByte(0x00);
+    }
+
+    /**
+     * Gets the first line of the string.
+     *
+     * @param value The string
+     * @return The first line
+     */
+    private static String getFirstLine(String value) {
+        int i = value.indexOf('\n');
+        return i == -1 ? value : value.substring(0, i);
+    }
+}
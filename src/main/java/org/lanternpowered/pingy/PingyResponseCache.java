@@ -0,0 +1,209 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A least recently used cache of {@link PingyStatusResponse}s that is
+ * bounded by the size of the encoded responses. The responses are stored
+ * off heap and released as soon as they are evicted.
+ * <p>
+ * The cache is keyed by the hash of the normalized hostname and split into
+ * segments that are locked independently, so the event loops don't contend
+ * on a single lock. Every segment is bounded by an equal part of the size.
+ */
+final class PingyResponseCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long maxSegmentSize;
+    private volatile boolean closed;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder savedFaviconBytes = new LongAdder();
+
+    /**
+     * Constructs a new response cache.
+     *
+     * @param maxSize The maximum size of the cached responses in bytes
+     */
+    PingyResponseCache(long maxSize) {
+        this.maxSegmentSize = maxSize / SEGMENTS;
+        for (int i = 0; i < SEGMENTS; i++) {
+            this.segments[i] = new Segment();
+        }
+    }
+
+    private Segment segment(long hash) {
+        return this.segments[(int) (hash ^ (hash >>> 32) ^ (hash >>> 48)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Gets the response for the specified hostname.
+     *
+     * @param hash The hash of the normalized hostname
+     * @param hostname The hostname as received in the handshake
+     * @param favicon Whether the favicon should be included
+     * @return A retained duplicate of the response frame, or null if the response isn't cached
+     */
+    ByteBuf get(long hash, byte[] hostname, boolean favicon) {
+        final Segment segment = this.segment(hash);
+        final Entry entry;
+        final ByteBuf buf;
+        synchronized (segment) {
+            entry = segment.entries.get(hash);
+            if (entry == null || !PingyCatalog.matches(entry.hostname, hostname)) {
+                return null;
+            }
+            // Retain while holding the lock, the response could be released by a eviction
+            buf = entry.response.retainedResponse(favicon);
+        }
+        this.hits.increment();
+        if (!favicon) {
+            this.savedFaviconBytes.add(entry.response.getFaviconSize());
+        }
+        return buf;
+    }
+
+    /**
+     * Puts the response into the cache and evicts the least recently used
+     * responses if the cache is too large. The response is released instead
+     * if the cache was closed in the meantime.
+     *
+     * @param hash The hash of the normalized hostname
+     * @param hostname The normalized hostname
+     * @param response The response
+     * @param favicon Whether the favicon should be included
+     * @return A retained duplicate of the response frame
+     */
+    ByteBuf put(long hash, byte[] hostname, PingyStatusResponse response, boolean favicon) {
+        this.misses.increment();
+        if (!favicon) {
+            this.savedFaviconBytes.add(response.getFaviconSize());
+        }
+        final ByteBuf buf = response.retainedResponse(favicon);
+        final Segment segment = this.segment(hash);
+        synchronized (segment) {
+            // Checked while holding the lock, close clears every segment after it is marked closed
+            if (this.closed) {
+                response.release();
+                return buf;
+            }
+            final Entry previous = segment.entries.put(hash, new Entry(hostname, response));
+            if (previous != null) {
+                segment.size -= previous.response.getMemorySize();
+                previous.response.release();
+            }
+            segment.size += response.getMemorySize();
+            final Iterator<Map.Entry<Long, Entry>> it = segment.entries.entrySet().iterator();
+            // Always keep the response that was just added
+            while (segment.size > this.maxSegmentSize && segment.entries.size() > 1) {
+                final PingyStatusResponse eldest = it.next().getValue().response;
+                it.remove();
+                segment.size -= eldest.getMemorySize();
+                eldest.release();
+                this.evictions.increment();
+            }
+        }
+        return buf;
+    }
+
+    /**
+     * Removes and releases all the cached responses, responses
+     * that are put afterwards are released immediately.
+     */
+    void close() {
+        this.closed = true;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                segment.entries.values().forEach(entry -> entry.response.release());
+                segment.entries.clear();
+                segment.size = 0;
+            }
+        }
+    }
+
+    long getSize() {
+        long size = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    int getCount() {
+        int count = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                count += segment.entries.size();
+            }
+        }
+        return count;
+    }
+
+    long getHits() {
+        return this.hits.sum();
+    }
+
+    long getMisses() {
+        return this.misses.sum();
+    }
+
+    long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    long getSavedFaviconBytes() {
+        return this.savedFaviconBytes.sum();
+    }
+
+    private static final class Segment {
+
+        private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long size;
+    }
+
+    private static final class Entry {
+
+        private final byte[] hostname;
+        private final PingyStatusResponse response;
+
+        private Entry(byte[] hostname, PingyStatusResponse response) {
+            this.hostname = hostname;
+            this.response = response;
+        }
+    }
+}
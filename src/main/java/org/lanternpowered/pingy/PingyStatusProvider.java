@@ -0,0 +1,129 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.IllegalReferenceCountException;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Provides the status responses, the response of the host
+ * in the {@link PingyCatalog} will be used if it's available.
+ * The favicon can be left out for addresses that recently
+ * received it.
+ */
+public final class PingyStatusProvider {
+
+    private volatile PingyStatusResponse defaultResponse;
+    private final LongAdder savedFaviconBytes = new LongAdder();
+    private volatile PingyCatalog catalog;
+    private volatile PingyFaviconTracker faviconTracker;
+
+    public PingyStatusProvider(PingyProperties properties) {
+        this.defaultResponse = PingyStatusResponse.of(properties);
+    }
+
+    /**
+     * Replaces the response that is used for hosts that aren't in the
+     * catalog. The previous response is returned and may be released right
+     * away, threads that were about to retain it use the new one instead.
+     *
+     * @param defaultResponse The default response
+     * @return The previous default response
+     */
+    PingyStatusResponse setDefaultResponse(PingyStatusResponse defaultResponse) {
+        final PingyStatusResponse previous = this.defaultResponse;
+        this.defaultResponse = defaultResponse;
+        return previous;
+    }
+
+    /**
+     * Sets the {@link PingyCatalog} with the host profiles,
+     * may be null to disable the catalog.
+     *
+     * @param catalog The catalog
+     */
+    public void setCatalog(PingyCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Sets the {@link PingyFaviconTracker} that decides whether the favicon
+     * should be sent, may be null to always send the favicon.
+     *
+     * @param faviconTracker The favicon tracker
+     */
+    void setFaviconTracker(PingyFaviconTracker faviconTracker) {
+        this.faviconTracker = faviconTracker;
+    }
+
+    /**
+     * Gets the amount of bytes that weren't sent because the favicon
+     * was left out of the responses, including the responses of the
+     * hosts in the current catalog.
+     *
+     * @return The amount of saved bytes
+     */
+    public long getSavedFaviconBytes() {
+        final PingyCatalog catalog = this.catalog;
+        return this.savedFaviconBytes.sum() + (catalog == null ? 0 : catalog.getSavedFaviconBytes());
+    }
+
+    /**
+     * Gets the status response for the specified hostname.
+     *
+     * @param hostname The hostname as received in the handshake
+     * @param address The address of the client, or null if unknown
+     * @return A retained duplicate of the response frame
+     */
+    ByteBuf getStatusResponse(byte[] hostname, InetAddress address) {
+        final PingyFaviconTracker faviconTracker = this.faviconTracker;
+        final boolean favicon = faviconTracker == null || address == null || faviconTracker.shouldSendFavicon(address);
+        final PingyCatalog catalog = this.catalog;
+        if (catalog != null && hostname != null) {
+            final ByteBuf response = catalog.getStatusResponse(hostname, favicon);
+            if (response != null) {
+                return response;
+            }
+        }
+        for (;;) {
+            final PingyStatusResponse defaultResponse = this.defaultResponse;
+            try {
+                final ByteBuf response = defaultResponse.retainedResponse(favicon);
+                if (!favicon) {
+                    this.savedFaviconBytes.add(defaultResponse.getFaviconSize());
+                }
+                return response;
+            } catch (IllegalReferenceCountException e) {
+                // The response was replaced and released before it could be retained
+                if (this.defaultResponse == defaultResponse) {
+                    throw e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import static org.lanternpowered.pingy.PingyBufUtils.writeVarInt;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * A pre-encoded status response. The response is stored as a complete
+ * frame, so it can be written without being encoded or copied again.
+ */
+public final class PingyStatusResponse {
+
+    private final static Gson GSON = new Gson();
+
+    private static final byte[] FAVICON_PREFIX = ",\"favicon\":\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FAVICON_SUFFIX = "\"}".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Encodes the status response for the {@link PingyProperties}.
+     *
+     * @param properties The properties
+     * @return The status response
+     */
+    public static PingyStatusResponse of(PingyProperties properties) {
+        final byte[] json = GSON.toJson(toJson(properties)).getBytes(StandardCharsets.UTF_8);
+        final byte[] favicon = properties.getFaviconData().map(data -> data.getBytes(StandardCharsets.UTF_8)).orElse(null);
+        return of(Unpooled.wrappedBuffer(json), favicon == null ? null : Unpooled.wrappedBuffer(favicon));
+    }
+
+    /**
+     * Encodes the status response from the json object without the favicon
+     * and the favicon data. The readable bytes of the buffers are used.
+     *
+     * @param json The json object without the favicon
+     * @param favicon The favicon data, or null if there is no favicon
+     * @return The status response
+     */
+    static PingyStatusResponse of(ByteBuf json, ByteBuf favicon) {
+        if (favicon == null || !favicon.isReadable()) {
+            return new PingyStatusResponse(encode(json, null), null);
+        }
+        return new PingyStatusResponse(encode(json, favicon), encode(json, null));
+    }
+
+    private static ByteBuf encode(ByteBuf json, ByteBuf favicon) {
+        int length = json.readableBytes();
+        if (favicon != null) {
+            length += FAVICON_PREFIX.length + favicon.readableBytes() + FAVICON_SUFFIX.length - 1;
+        }
+        final int frameLength = 1 + varIntSize(length) + length;
+
+        final ByteBuf buf = Unpooled.directBuffer(varIntSize(frameLength) + frameLength);
+        writeVarInt(buf, frameLength);
+        buf.writeByte(0x00);
+        writeVarInt(buf, length);
+        if (favicon == null) {
+            buf.writeBytes(json, json.readerIndex(), json.readableBytes());
+        } else {
+            // Insert the favicon in front of the closing bracket of the object
+            buf.writeBytes(json, json.readerIndex(), json.readableBytes() - 1);
+            buf.writeBytes(FAVICON_PREFIX);
+            buf.writeBytes(favicon, favicon.readerIndex(), favicon.readableBytes());
+            buf.writeBytes(FAVICON_SUFFIX);
+        }
+        return buf;
+    }
+
+    /**
+     * Builds the status json object for the {@link PingyProperties},
+     * without the favicon.
+     *
+     * @param properties The properties
+     * @return The json object
+     */
+    static JsonObject toJson(PingyProperties properties) {
+        final JsonObject rootObject = new JsonObject();
+        final JsonObject versionObject = new JsonObject();
+        versionObject.addProperty("name", properties.getOutdatedMessage());
+        versionObject.addProperty("protocol", -1);
+
+        final Optional<String> optTooltip = properties.getOutdatedMessageTooltip();
+        if (optTooltip.isPresent()) {
+            final JsonObject playersObject = new JsonObject();
+            playersObject.addProperty("max", 0);
+            playersObject.addProperty("online", 0);
+            final JsonArray array = new JsonArray();
+            for (String name : optTooltip.get().split("\n")) {
+                final JsonObject playerEntry = new JsonObject();
+                playerEntry.addProperty("name", name);
+                playerEntry.addProperty("id", UUID.randomUUID().toString());
+                array.add(playerEntry);
+            }
+            playersObject.add("sample", array);
+            rootObject.add("players", playersObject);
+        }
+
+        rootObject.add("version", versionObject);
+        rootObject.add("description", properties.getMessageOfTheDay());
+
+        String serverType = properties.getServerType().toUpperCase();
+        if (serverType.equals("FORGE")) {
+            serverType = "FML";
+        }
+
+        // Forge Mod Loader info
+        final JsonObject fmlObject = new JsonObject();
+        fmlObject.addProperty("type", serverType);
+        fmlObject.add("modList", GSON.toJsonTree(properties.getModList()));
+
+        rootObject.add("modinfo", fmlObject);
+        return rootObject;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & 0xFFFFFF80) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private final ByteBuf response;
+    private final ByteBuf responseWithoutFavicon;
+
+    private PingyStatusResponse(ByteBuf response, ByteBuf responseWithoutFavicon) {
+        this.response = response;
+        this.responseWithoutFavicon = responseWithoutFavicon;
+    }
+
+    /**
+     * Gets a retained duplicate of the encoded response frame.
+     *
+     * @return The response frame
+     */
+    public ByteBuf retainedResponse() {
+        return this.response.retainedDuplicate();
+    }
+
+    /**
+     * Gets a retained duplicate of the encoded response frame,
+     * optionally without the favicon.
+     *
+     * @param favicon Whether the favicon should be included
+     * @return The response frame
+     */
+    public ByteBuf retainedResponse(boolean favicon) {
+        return (favicon || this.responseWithoutFavicon == null ? this.response : this.responseWithoutFavicon).retainedDuplicate();
+    }
+
+    /**
+     * Gets the size of the encoded response in bytes.
+     *
+     * @return The size
+     */
+    public int getSize() {
+        return this.response.readableBytes();
+    }
+
+    /**
+     * Gets the amount of bytes that the favicon adds to the
+     * encoded response, 0 if there is no favicon.
+     *
+     * @return The size of the favicon
+     */
+    public int getFaviconSize() {
+        return this.responseWithoutFavicon == null ? 0 :
+                this.response.readableBytes() - this.responseWithoutFavicon.readableBytes();
+    }
+
+    /**
+     * Gets the amount of memory that is used by the encoded responses.
+     *
+     * @return The memory size
+     */
+    int getMemorySize() {
+        return this.response.readableBytes() + (this.responseWithoutFavicon == null ? 0 :
+                this.responseWithoutFavicon.readableBytes());
+    }
+
+    /**
+     * Releases the encoded response, the responses that
+     * are still being written remain valid.
+     */
+    void release() {
+        this.response.release();
+        if (this.responseWithoutFavicon != null) {
+            this.responseWithoutFavicon.release();
+        }
+    }
+}
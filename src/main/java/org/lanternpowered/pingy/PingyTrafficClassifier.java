@@ -0,0 +1,180 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Classifies the first bytes of a connection and rejects the traffic
+ * that can't be a minecraft client, like http requests, tls handshakes
+ * and port scanners. Rejected connections are closed with a reset, the
+ * rest of the pipeline is never reached.
+ */
+public final class PingyTrafficClassifier extends ByteToMessageDecoder {
+
+    public enum Rejection {
+        /**
+         * A http request.
+         */
+        HTTP,
+        /**
+         * A tls client hello.
+         */
+        TLS,
+        /**
+         * A length prefix that can't be a handshake message.
+         */
+        INVALID_LENGTH,
+        /**
+         * Anything else that isn't a handshake message.
+         */
+        UNKNOWN,
+    }
+
+    /**
+     * The minimum length of a handshake message: message id, protocol
+     * version, empty hostname, port and the protocol state.
+     */
+    private static final int MIN_HANDSHAKE_LENGTH = 1 + 1 + 1 + 2 + 1;
+
+    /**
+     * The first four bytes of http requests.
+     */
+    private static final int[] HTTP_METHODS = {
+            asInt("GET "), asInt("HEAD"), asInt("POST"), asInt("PUT "), asInt("DELE"),
+            asInt("OPTI"), asInt("CONN"), asInt("PATC"), asInt("TRAC"), asInt("PRI "),
+    };
+
+    private static final int TLS_HANDSHAKE = 0x16;
+    private static final int TLS_MAJOR_VERSION = 0x03;
+
+    /**
+     * The result of the classification that accepts the connection.
+     */
+    private static final int ACCEPT = -1;
+
+    /**
+     * The result of the classification if there aren't enough bytes to decide.
+     */
+    private static final int UNDECIDED = -2;
+
+    private static final Rejection[] REJECTIONS = Rejection.values();
+
+    private final LongAdder[] rejections;
+
+    /**
+     * Constructs a new traffic classifier.
+     *
+     * @param rejections The counters for every {@link Rejection}, indexed by ordinal
+     */
+    public PingyTrafficClassifier(LongAdder[] rejections) {
+        this.rejections = rejections;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        final int result = classify(in);
+        if (result == UNDECIDED) {
+            return;
+        }
+        if (result == ACCEPT) {
+            // The buffered bytes will be forwarded to the next handler
+            ctx.pipeline().remove(this);
+            return;
+        }
+        in.skipBytes(in.readableBytes());
+        this.rejections[result].increment();
+        Pingy.debugInfo(PingyChannelUtils.getRemoteAddress(ctx.channel()) + " was rejected: " + REJECTIONS[result]);
+        PingyChannelUtils.reject(ctx);
+    }
+
+    /**
+     * Classifies the first bytes of a connection.
+     *
+     * @param buf The buffer with the first bytes
+     * @return {@link #ACCEPT}, {@link #UNDECIDED} or the ordinal of the {@link Rejection}
+     */
+    private static int classify(ByteBuf buf) {
+        final int index = buf.readerIndex();
+        final int readable = buf.readableBytes();
+        final int first = buf.getUnsignedByte(index);
+        // The legacy ping and join messages, these are handled by the legacy handler
+        if (first == 0xfe || first == 0x02) {
+            return ACCEPT;
+        }
+        if (readable < 2) {
+            return UNDECIDED;
+        }
+        final int second = buf.getUnsignedByte(index + 1);
+
+        // The handshake message length fits in at most two bytes, followed
+        // by the handshake message id, which is always 0
+        final int length;
+        final int messageIdIndex;
+        if ((first & 0x80) == 0) {
+            length = first;
+            messageIdIndex = 1;
+        } else {
+            length = (second & 0x80) != 0 ? Integer.MAX_VALUE : (first & 0x7f) | second << 7;
+            messageIdIndex = 2;
+        }
+        final boolean validLength = length >= MIN_HANDSHAKE_LENGTH && length <= PingyFramingHandler.MAX_HANDSHAKE_LENGTH;
+        if (validLength) {
+            if (readable <= messageIdIndex) {
+                return UNDECIDED;
+            }
+            if (buf.getByte(index + messageIdIndex) == 0) {
+                return ACCEPT;
+            }
+        }
+
+        // Figure out what kind of traffic is rejected
+        if (readable < 4 && first >= 'A' && first <= 'Z') {
+            // Wait for the complete http method
+            return UNDECIDED;
+        }
+        if (first == TLS_HANDSHAKE && second == TLS_MAJOR_VERSION) {
+            return Rejection.TLS.ordinal();
+        }
+        if (readable >= 4) {
+            final int method = buf.getInt(index);
+            for (int httpMethod : HTTP_METHODS) {
+                if (method == httpMethod) {
+                    return Rejection.HTTP.ordinal();
+                }
+            }
+        }
+        return validLength ? Rejection.UNKNOWN.ordinal() : Rejection.INVALID_LENGTH.ordinal();
+    }
+
+    private static int asInt(String value) {
+        return value.charAt(0) << 24 | value.charAt(1) << 16 | value.charAt(2) << 8 | value.charAt(3);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import static org.lanternpowered.pingy.PingyBufUtils.readByteArray;
+import static org.lanternpowered.pingy.PingyBufUtils.readVarInt;
+import static org.lanternpowered.pingy.PingyBufUtils.writeByteArray;
+import static org.lanternpowered.pingy.PingyBufUtils.writeVarInt;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.concurrent.Promise;
+
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Requests the status of a upstream server, the same way as a client
+ * does: a handshake to the status state followed by a status request.
+ */
+final class PingyUpstreamHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+    /**
+     * The maximum length of the status json, the vanilla
+     * server limits strings to 32767 characters.
+     */
+    static final int MAX_STATUS_LENGTH = 32767 * 4;
+
+    /**
+     * The maximum length of the status response frame: the message id,
+     * the length of the json and the json.
+     */
+    static final int MAX_RESPONSE_LENGTH = 1 + 3 + MAX_STATUS_LENGTH;
+
+    private static final JsonParser JSON_PARSER = new JsonParser();
+
+    private final String host;
+    private final int port;
+    private final Promise<JsonObject> promise;
+
+    /**
+     * Constructs a new upstream handler.
+     *
+     * @param host The host that is sent in the handshake
+     * @param port The port that is sent in the handshake
+     * @param promise The promise that will be completed with the status
+     */
+    PingyUpstreamHandler(String host, int port, Promise<JsonObject> promise) {
+        this.host = host;
+        this.port = port;
+        this.promise = promise;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        super.channelActive(ctx);
+        final ByteBuf handshake = ctx.alloc().buffer();
+        writeVarInt(handshake, 0x00);
+        // The protocol version is unknown, servers respond to status requests anyway
+        writeVarInt(handshake, -1);
+        writeByteArray(handshake, this.host.getBytes(StandardCharsets.UTF_8));
+        handshake.writeShort(this.port);
+        writeVarInt(handshake, 1);
+        ctx.write(handshake);
+
+        final ByteBuf request = ctx.alloc().buffer(1);
+        writeVarInt(request, 0x00);
+        ctx.writeAndFlush(request);
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) throws Exception {
+        if (readVarInt(msg) != 0x00) {
+            throw new DecoderException("Unexpected message, expected the status response.");
+        }
+        final String json = new String(readByteArray(msg, MAX_STATUS_LENGTH), StandardCharsets.UTF_8);
+        final JsonElement element = JSON_PARSER.parse(json);
+        if (!element.isJsonObject()) {
+            throw new DecoderException("The status response isn't a json object.");
+        }
+        this.promise.trySuccess(element.getAsJsonObject());
+        ctx.close();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        super.channelInactive(ctx);
+        this.promise.tryFailure(new ClosedChannelException());
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        this.promise.tryFailure(cause);
+        ctx.close();
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pings the upstream servers periodically and replaces the default status
+ * response with one that combines their player counts and samples. The
+ * static status of the {@link PingyProperties} is used if none of the
+ * servers respond. Refreshes never overlap, a refresh that is requested
+ * while another one is running joins the running one.
+ */
+public final class PingyUpstreamPoller {
+
+    private final static Gson GSON = new Gson();
+
+    /**
+     * The maximum amount of players in the combined sample, the same as vanilla.
+     */
+    private static final int MAX_SAMPLE_SIZE = 12;
+
+    private final PingyProperties properties;
+    private final PingyStatusProvider statusProvider;
+    private final EventLoopGroup group;
+    private final Class<? extends Channel> channelClass;
+    private final Upstream[] upstreams;
+    private final byte[] favicon;
+
+    // The promise of the refresh that is in progress
+    private final AtomicReference<Promise<Void>> refreshing = new AtomicReference<>();
+    private volatile boolean running;
+    private volatile int availableUpstreams = -1;
+
+    private ScheduledFuture<?> task;
+    private String lastStatus;
+    private boolean upstreamStatus;
+
+    /**
+     * Constructs a new upstream poller.
+     *
+     * @param properties The properties with the upstream servers
+     * @param statusProvider The status provider whose default response will be replaced
+     * @param group The event loop group that is used for the connections
+     * @param epoll Whether the event loop group uses epoll
+     */
+    public PingyUpstreamPoller(PingyProperties properties, PingyStatusProvider statusProvider,
+            EventLoopGroup group, boolean epoll) {
+        this.properties = properties;
+        this.statusProvider = statusProvider;
+        this.group = group;
+        this.channelClass = epoll ? EpollSocketChannel.class : NioSocketChannel.class;
+        final String[] upstreams = properties.getUpstreams();
+        if (upstreams.length == 0) {
+            throw new IllegalArgumentException("There must be at least one upstream server");
+        }
+        this.upstreams = new Upstream[upstreams.length];
+        for (int i = 0; i < upstreams.length; i++) {
+            this.upstreams[i] = Upstream.parse(upstreams[i]);
+        }
+        this.favicon = properties.getFaviconData().map(data -> data.getBytes(StandardCharsets.UTF_8)).orElse(null);
+    }
+
+    /**
+     * Starts polling the upstream servers, the first refresh happens immediately.
+     */
+    public synchronized void start() {
+        this.running = true;
+        this.schedule(0);
+    }
+
+    /**
+     * Stops polling the upstream servers, the static status
+     * of the {@link PingyProperties} is restored.
+     */
+    public synchronized void stop() {
+        this.running = false;
+        if (this.task != null) {
+            this.task.cancel(false);
+            this.task = null;
+        }
+        if (this.upstreamStatus) {
+            this.statusProvider.setDefaultResponse(PingyStatusResponse.of(this.properties)).release();
+            this.upstreamStatus = false;
+            this.lastStatus = null;
+        }
+    }
+
+    /**
+     * Gets the amount of upstream servers that responded to the
+     * last refresh, -1 if there wasn't a refresh yet.
+     *
+     * @return The amount of available upstream servers
+     */
+    public int getAvailableUpstreams() {
+        return this.availableUpstreams;
+    }
+
+    /**
+     * Gets the amount of configured upstream servers.
+     *
+     * @return The amount of upstream servers
+     */
+    public int getUpstreamCount() {
+        return this.upstreams.length;
+    }
+
+    private synchronized void schedule(long delay) {
+        if (this.running) {
+            // The host names are resolved while refreshing, keep that out of the event loops
+            this.task = GlobalEventExecutor.INSTANCE.schedule(this::poll, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void poll() {
+        this.refresh();
+        final int jitter = this.properties.getUpstreamPollJitter();
+        this.schedule(this.properties.getUpstreamPollInterval() +
+                (jitter > 0 ? ThreadLocalRandom.current().nextInt(jitter + 1) : 0));
+    }
+
+    /**
+     * Pings all the upstream servers and updates the status once all of
+     * them responded or timed out. The refresh that is already in progress
+     * is returned instead if there is one.
+     *
+     * @return The future that is completed once the status is updated
+     */
+    public Future<Void> refresh() {
+        if (!this.running) {
+            return GlobalEventExecutor.INSTANCE.newSucceededFuture(null);
+        }
+        final Promise<Void> promise = GlobalEventExecutor.INSTANCE.newPromise();
+        while (!this.refreshing.compareAndSet(null, promise)) {
+            final Promise<Void> current = this.refreshing.get();
+            if (current != null) {
+                return current;
+            }
+        }
+        final JsonObject[] results = new JsonObject[this.upstreams.length];
+        final AtomicInteger remaining = new AtomicInteger(this.upstreams.length);
+        for (int i = 0; i < this.upstreams.length; i++) {
+            final int index = i;
+            final Upstream upstream = this.upstreams[i];
+            this.ping(upstream).addListener(future -> {
+                if (future.isSuccess()) {
+                    results[index] = (JsonObject) future.getNow();
+                } else {
+                    Pingy.debugWarn("Failed to ping the upstream server " + upstream + ": " + future.cause());
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    // The promise is completed before the next refresh can start
+                    try {
+                        this.update(results);
+                        promise.setSuccess(null);
+                    } catch (Throwable t) {
+                        Pingy.warn("Failed to update the upstream status: " + t);
+                        promise.setFailure(t);
+                    } finally {
+                        this.refreshing.set(null);
+                    }
+                }
+            });
+        }
+        return promise;
+    }
+
+    private Future<JsonObject> ping(Upstream upstream) {
+        final EventLoop eventLoop = this.group.next();
+        final Promise<JsonObject> promise = eventLoop.newPromise();
+        final InetSocketAddress address = new InetSocketAddress(upstream.host, upstream.port);
+        if (address.isUnresolved()) {
+            return promise.setFailure(new UnknownHostException(upstream.host));
+        }
+        final int timeout = this.properties.getUpstreamTimeout();
+        final ChannelFuture connectFuture = new Bootstrap()
+                .group(eventLoop)
+                .channel(this.channelClass)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, timeout)
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) throws Exception {
+                        ch.pipeline()
+                                .addLast(new PingyFramingHandler(PingyUpstreamHandler.MAX_RESPONSE_LENGTH,
+                                        3 + PingyUpstreamHandler.MAX_RESPONSE_LENGTH))
+                                .addLast(new PingyUpstreamHandler(upstream.host, upstream.port, promise));
+                    }
+                })
+                .connect(address);
+        connectFuture.addListener(future -> {
+            if (!future.isSuccess()) {
+                promise.tryFailure(future.cause());
+            }
+        });
+        // The timeout covers the complete exchange, not only the connect
+        final ScheduledFuture<?> timeoutTask = eventLoop.schedule(
+                () -> promise.tryFailure(new TimeoutException("Timed out after " + timeout + "ms")), timeout, TimeUnit.MILLISECONDS);
+        promise.addListener(future -> {
+            timeoutTask.cancel(false);
+            connectFuture.channel().close();
+        });
+        return promise;
+    }
+
+    /**
+     * Combines the responses of the upstream servers into
+     * a new default status response.
+     *
+     * @param results The responses, null for servers that didn't respond
+     */
+    private void update(JsonObject[] results) {
+        int available = 0;
+        long online = 0;
+        long max = 0;
+        final JsonArray sample = new JsonArray();
+        for (JsonObject result : results) {
+            if (result == null) {
+                continue;
+            }
+            available++;
+            final JsonElement players = result.get("players");
+            if (players == null || !players.isJsonObject()) {
+                continue;
+            }
+            final JsonObject playersObject = players.getAsJsonObject();
+            online += getNumber(playersObject, "online");
+            max += getNumber(playersObject, "max");
+            final JsonElement playersSample = playersObject.get("sample");
+            if (playersSample != null && playersSample.isJsonArray()) {
+                for (JsonElement entry : playersSample.getAsJsonArray()) {
+                    if (sample.size() < MAX_SAMPLE_SIZE && entry.isJsonObject()) {
+                        sample.add(entry);
+                    }
+                }
+            }
+        }
+        final int previousAvailable = this.availableUpstreams;
+        this.availableUpstreams = available;
+        if (available == 0 && previousAvailable != 0) {
+            Pingy.warn("None of the upstream servers are available, the static status will be shown.");
+        } else if (available > 0 && previousAvailable == 0) {
+            Pingy.info("The upstream servers are available again.");
+        }
+
+        final JsonObject status = PingyStatusResponse.toJson(this.properties);
+        if (available > 0) {
+            final JsonObject playersObject = new JsonObject();
+            playersObject.addProperty("max", (int) Math.min(max, Integer.MAX_VALUE));
+            playersObject.addProperty("online", (int) Math.min(online, Integer.MAX_VALUE));
+            if (sample.size() > 0) {
+                playersObject.add("sample", sample);
+            }
+            status.add("players", playersObject);
+        }
+        final String json = GSON.toJson(status);
+        synchronized (this) {
+            if (!this.running) {
+                return;
+            }
+            // The static status only has to be encoded once, the players are the only thing that changes
+            if (available > 0 ? json.equals(this.lastStatus) : !this.upstreamStatus) {
+                return;
+            }
+            this.lastStatus = available > 0 ? json : null;
+            this.upstreamStatus = available > 0;
+            final PingyStatusResponse response = PingyStatusResponse.of(
+                    Unpooled.wrappedBuffer(json.getBytes(StandardCharsets.UTF_8)),
+                    this.favicon == null ? null : Unpooled.wrappedBuffer(this.favicon));
+            this.statusProvider.setDefaultResponse(response).release();
+        }
+    }
+
+    private static long getNumber(JsonObject object, String key) {
+        final JsonElement element = object.get(key);
+        if (element == null || !element.isJsonPrimitive() || !element.getAsJsonPrimitive().isNumber()) {
+            return 0;
+        }
+        return Math.max(element.getAsLong(), 0);
+    }
+
+    private static final class Upstream {
+
+        /**
+         * Parses the upstream address, in the format host:port. The
+         * port may be omitted and ipv6 addresses must be in brackets.
+         *
+         * @param value The address
+         * @return The upstream
+         */
+        static Upstream parse(String value) {
+            String host = value;
+            int port = 25565;
+            final int portIndex = value.lastIndexOf(':');
+            if (portIndex != -1 && portIndex > value.lastIndexOf(']')) {
+                host = value.substring(0, portIndex);
+                try {
+                    port = Integer.parseInt(value.substring(portIndex + 1));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid upstream port: " + value);
+                }
+            }
+            if (host.startsWith("[") && host.endsWith("]")) {
+                host = host.substring(1, host.length() - 1);
+            }
+            if (host.isEmpty() || port < 0 || port > 0xffff) {
+                throw new IllegalArgumentException("Invalid upstream address: " + value);
+            }
+            return new Upstream(host, port);
+        }
+
+        private final String host;
+        private final int port;
+
+        private Upstream(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public String toString() {
+            return this.host + ":" + this.port;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class PingyAccessLogTest {
+
+    @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 25565);
+
+    private static List<Path> segments(Path directory) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + PingyAccessLog.SEGMENT_EXTENSION)) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+
+    private static List<ByteBuffer> records(Path directory) throws IOException {
+        final List<ByteBuffer> records = new ArrayList<>();
+        for (Path file : segments(directory)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            for (int offset = 0; offset + PingyAccessLog.RECORD_SIZE <= buffer.capacity(); offset += PingyAccessLog.RECORD_SIZE) {
+                if (buffer.getLong(offset + PingyAccessLog.TIMESTAMP_OFFSET) != 0) {
+                    buffer.position(offset);
+                    records.add(buffer.slice());
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Gets whether any of the files is still mapped into the memory of this process.
+     */
+    private static boolean isMapped(Path directory) throws IOException {
+        final Path maps = Paths.get("/proc/self/maps");
+        return Files.exists(maps) && new String(Files.readAllBytes(maps), StandardCharsets.UTF_8)
+                .contains(directory.toRealPath().toString());
+    }
+
+    @Test
+    public void testRecords() throws IOException {
+        final Path directory = this.folder.getRoot().toPath();
+        final PingyAccessLog accessLog = new PingyAccessLog(directory, PingyAccessLog.RECORD_SIZE * 2);
+        for (int i = 0; i < 5; i++) {
+            accessLog.log(ADDRESS, 340, "localhost".getBytes(StandardCharsets.UTF_8), 1, false, PingyAccessLog.OUTCOME_STATUS);
+        }
+        accessLog.close();
+        assertEquals(3, segments(directory).size());
+        final List<ByteBuffer> records = records(directory);
+        assertEquals(5, records.size());
+        for (ByteBuffer record : records) {
+            assertEquals(25565, record.getShort(PingyAccessLog.PORT_OFFSET) & 0xffff);
+            assertEquals(340, record.getInt(PingyAccessLog.PROTOCOL_VERSION_OFFSET));
+            assertEquals(PingyAccessLog.OUTCOME_STATUS, record.get(PingyAccessLog.OUTCOME_OFFSET));
+            assertEquals(9, record.get(PingyAccessLog.HOSTNAME_LENGTH_OFFSET));
+        }
+    }
+
+    @Test
+    public void testMaxSegments() throws IOException {
+        final Path directory = this.folder.getRoot().toPath();
+        final PingyAccessLog accessLog = new PingyAccessLog(directory, PingyAccessLog.RECORD_SIZE, 3);
+        for (int i = 0; i < 10; i++) {
+            accessLog.log(ADDRESS, 340, null, 1, false, PingyAccessLog.OUTCOME_STATUS);
+            assertTrue(segments(directory).size() <= 3);
+        }
+        accessLog.close();
+        assertEquals(3, segments(directory).size());
+        assertEquals(3, records(directory).size());
+    }
+
+    @Test
+    public void testLogAfterClose() throws IOException {
+        final Path directory = this.folder.getRoot().toPath();
+        final PingyAccessLog accessLog = new PingyAccessLog(directory, PingyAccessLog.RECORD_SIZE * 2);
+        accessLog.close();
+        accessLog.log(ADDRESS, 340, null, 1, false, PingyAccessLog.OUTCOME_STATUS);
+        assertTrue(segments(directory).isEmpty());
+    }
+
+    @Test
+    public void testCloseUnmapsSegmentsOfOtherThreads() throws Exception {
+        final Path directory = this.folder.getRoot().toPath();
+        final PingyAccessLog accessLog = new PingyAccessLog(directory, PingyAccessLog.RECORD_SIZE * 16);
+        final NioEventLoopGroup group = new NioEventLoopGroup(2);
+        try {
+            for (int i = 0; i < 2; i++) {
+                group.next().submit(() -> accessLog.log(ADDRESS, 340, null, 1, false, PingyAccessLog.OUTCOME_PING)).sync();
+            }
+            assertEquals(2, segments(directory).size());
+            accessLog.close();
+            assertFalse(isMapped(directory));
+            assertEquals(2, records(directory).size());
+            // The event loops don't append anymore after the access log is closed
+            group.next().submit(() -> accessLog.log(ADDRESS, 340, null, 1, false, PingyAccessLog.OUTCOME_PING)).sync();
+            assertEquals(2, records(directory).size());
+        } finally {
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+}
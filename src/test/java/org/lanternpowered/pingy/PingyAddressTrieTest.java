@@ -0,0 +1,182 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class PingyAddressTrieTest {
+
+    private static final class Prefix {
+
+        private final byte[] address;
+        private final int length;
+        private final byte value;
+
+        private Prefix(byte[] address, int length, byte value) {
+            this.address = address;
+            this.length = length;
+            this.value = value;
+        }
+
+        private boolean matches(byte[] address) {
+            if (address.length != this.address.length) {
+                return false;
+            }
+            for (int i = 0; i < this.length; i++) {
+                final int shift = 7 - (i & 7);
+                if (((address[i >> 3] >> shift) & 1) != ((this.address[i >> 3] >> shift) & 1)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The longest matching prefix wins, the last added
+     * prefix wins if the same prefix is added twice.
+     */
+    private static byte bruteForce(List<Prefix> prefixes, byte[] address) {
+        byte value = PingyAddressTrie.NONE;
+        int length = -1;
+        for (Prefix prefix : prefixes) {
+            if (prefix.length >= length && prefix.matches(address)) {
+                value = prefix.value;
+                length = prefix.length;
+            }
+        }
+        return value;
+    }
+
+    @Test
+    public void testSequentialHosts() throws Exception {
+        final PingyAddressTrie.Builder builder = new PingyAddressTrie.Builder();
+        for (int i = 0; i < 5000; i++) {
+            builder.add(InetAddress.getByAddress(new byte[] { 10, 0, (byte) (i >> 8), (byte) i }), 32, PingyAddressTrie.BLOCK);
+        }
+        final PingyAddressTrie trie = builder.build();
+        for (int i = 0; i < 5000; i++) {
+            final InetAddress address = InetAddress.getByAddress(new byte[] { 10, 0, (byte) (i >> 8), (byte) i });
+            assertEquals(address.toString(), true, trie.isBlocked(address));
+        }
+        assertEquals(false, trie.isBlocked(InetAddress.getByName("10.0.19.136")));
+    }
+
+    @Test
+    public void testAllowListWins() throws Exception {
+        final PingyAddressTrie trie = new PingyAddressTrie.Builder()
+                .add("10.0.0.0/8", PingyAddressTrie.BLOCK)
+                .add("10.1.0.0/16", PingyAddressTrie.ALLOW)
+                .add("10.1.2.3", PingyAddressTrie.BLOCK)
+                .add("2001:db8::/32", PingyAddressTrie.BLOCK)
+                .build();
+        assertEquals(true, trie.isBlocked(InetAddress.getByName("10.2.3.4")));
+        assertEquals(false, trie.isBlocked(InetAddress.getByName("10.1.3.4")));
+        assertEquals(true, trie.isBlocked(InetAddress.getByName("10.1.2.3")));
+        assertEquals(false, trie.isBlocked(InetAddress.getByName("11.0.0.1")));
+        assertEquals(true, trie.isBlocked(InetAddress.getByName("2001:db8::1")));
+        assertEquals(false, trie.isBlocked(InetAddress.getByName("2001:db9::1")));
+    }
+
+    @Test
+    public void testAgainstBruteForce() throws Exception {
+        final Random random = new Random(7);
+        final List<Prefix> prefixes = new ArrayList<>();
+        final PingyAddressTrie.Builder builder = new PingyAddressTrie.Builder();
+        for (int i = 0; i < 3000; i++) {
+            final boolean v4 = random.nextBoolean();
+            final byte[] address = randomAddress(random, v4);
+            final int length = random.nextInt(v4 ? 33 : 129);
+            final byte value = random.nextInt(4) == 0 ? PingyAddressTrie.ALLOW : PingyAddressTrie.BLOCK;
+            prefixes.add(new Prefix(address, length, value));
+            builder.add(InetAddress.getByAddress(address), length, value);
+        }
+        final PingyAddressTrie trie = builder.build();
+        for (int i = 0; i < 20000; i++) {
+            final byte[] address;
+            if (i % 2 == 0) {
+                // Addresses that are close to one of the prefixes
+                final Prefix prefix = prefixes.get(random.nextInt(prefixes.size()));
+                address = prefix.address.clone();
+                final int bit = random.nextInt(address.length * 8);
+                address[bit >> 3] ^= 1 << (7 - (bit & 7));
+            } else {
+                address = randomAddress(random, random.nextBoolean());
+            }
+            final InetAddress inetAddress = InetAddress.getByAddress(address);
+            assertEquals(inetAddress.toString(), bruteForce(prefixes, address), trie.lookup(inetAddress));
+        }
+        for (Prefix prefix : prefixes) {
+            final InetAddress inetAddress = InetAddress.getByAddress(prefix.address);
+            assertEquals(inetAddress.toString(), bruteForce(prefixes, prefix.address), trie.lookup(inetAddress));
+        }
+    }
+
+    private static byte[] randomAddress(Random random, boolean v4) {
+        final byte[] address = new byte[v4 ? 4 : 16];
+        random.nextBytes(address);
+        // Keep the addresses in a few ranges, so that the prefixes overlap
+        address[0] = (byte) (10 + random.nextInt(3));
+        return address;
+    }
+
+    @Test
+    public void testLookupTypes() throws Exception {
+        final PingyAddressTrie trie = new PingyAddressTrie.Builder()
+                .add("192.168.0.0/16", PingyAddressTrie.BLOCK)
+                .build();
+        final InetAddress address = InetAddress.getByName("192.168.1.1");
+        assertEquals(true, address instanceof Inet4Address);
+        assertEquals(PingyAddressTrie.BLOCK, trie.lookupV4(0xc0a80101));
+        assertEquals(PingyAddressTrie.BLOCK, trie.lookup(address));
+        // A ipv4 mapped ipv6 address is converted by the jdk
+        assertEquals(true, InetAddress.getByName("::ffff:192.168.1.1") instanceof Inet4Address);
+        assertEquals(false, InetAddress.getByName("::1") instanceof Inet4Address);
+        assertEquals(true, InetAddress.getByName("::1") instanceof Inet6Address);
+    }
+
+    @Test
+    public void testHashCodeIsAddress() throws Exception {
+        // The lookup of ipv4 addresses relies on this on the jdk that runs the tests
+        assertEquals(true, PingyAddressTrie.HASH_CODE_IS_ADDRESS);
+        final Random random = new Random(4);
+        final byte[] bytes = new byte[4];
+        for (int i = 0; i < 10000; i++) {
+            random.nextBytes(bytes);
+            final InetAddress address = InetAddress.getByAddress(bytes);
+            final int value = ((bytes[0] & 0xff) << 24) | ((bytes[1] & 0xff) << 16) | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+            assertEquals(value, address.hashCode());
+        }
+    }
+}
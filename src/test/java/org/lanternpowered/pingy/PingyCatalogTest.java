@@ -0,0 +1,145 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class PingyCatalogTest {
+
+    @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+    private PingyCatalog catalog;
+
+    @Before
+    public void openCatalog() throws IOException {
+        final Path profiles = this.folder.newFolder("profiles").toPath();
+        Files.write(profiles.resolve("play.example.com.json"),
+                "{\"message-of-the-day\": \"Example\"}".getBytes(StandardCharsets.UTF_8));
+        Files.write(profiles.resolve("other.example.com.json"),
+                "{\"message-of-the-day\": \"Other\"}".getBytes(StandardCharsets.UTF_8));
+        final Path output = this.folder.newFolder("catalog").toPath();
+        assertEquals(2, PingyCatalogBuilder.build(profiles, output));
+        this.catalog = PingyCatalog.open(output, 1024 * 1024);
+    }
+
+    @After
+    public void closeCatalog() {
+        this.catalog.close();
+    }
+
+    private static byte[] bytes(String hostname) {
+        return hostname.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private ByteBuf get(String hostname) {
+        return this.catalog.getStatusResponse(bytes(hostname), true);
+    }
+
+    @Test
+    public void testNormalizedHash() {
+        for (String hostname : new String[] { "", "play.example.com", "Play.Example.COM..", "play.example.com\0FML\0", "\0" }) {
+            assertEquals(PingyCatalog.hash(PingyCatalog.normalize(bytes(hostname))), PingyCatalog.normalizedHash(bytes(hostname)));
+            assertTrue(PingyCatalog.matches(PingyCatalog.normalize(bytes(hostname)), bytes(hostname)));
+        }
+        assertFalse(PingyCatalog.matches(bytes("play.example.com"), bytes("play.example.co")));
+        assertFalse(PingyCatalog.matches(bytes("play.example.com"), bytes("play.example.org")));
+    }
+
+    @Test
+    public void testCachedHost() {
+        final ByteBuf first = this.get("play.example.com");
+        assertNotNull(first);
+        first.release();
+        for (String hostname : new String[] { "Play.Example.COM", "play.example.com.", "play.example.com\0FML\0" }) {
+            final ByteBuf buf = this.get(hostname);
+            assertNotNull(hostname, buf);
+            buf.release();
+        }
+        final ByteBuf other = this.get("other.example.com");
+        assertNotNull(other);
+        other.release();
+        assertEquals(3, this.catalog.getCacheHits());
+        assertEquals(2, this.catalog.getCacheMisses());
+        assertEquals(2, this.catalog.getCachedResponses());
+        assertEquals(0, this.catalog.getUnknownHosts());
+    }
+
+    @Test
+    public void testUnknownHosts() {
+        for (int i = 0; i < 3; i++) {
+            assertNull(this.get("unknown.example.com"));
+            assertNull(this.get("Unknown.Example.com."));
+        }
+        assertEquals(6, this.catalog.getUnknownHosts());
+        // Unknown hosts shouldn't affect the hit rate of the cache
+        assertEquals(0, this.catalog.getCacheHits());
+        assertEquals(0, this.catalog.getCacheMisses());
+        assertEquals(0, this.catalog.getCachedResponses());
+        // Known hosts are never mistaken for unknown ones
+        final ByteBuf buf = this.get("play.example.com");
+        assertNotNull(buf);
+        buf.release();
+    }
+
+    @Test
+    public void testCachedResponsesAreReleasedOnClose() {
+        final ByteBuf buf = this.get("play.example.com");
+        assertEquals(2, buf.refCnt());
+        this.catalog.close();
+        assertEquals(1, buf.refCnt());
+        buf.release();
+        assertEquals(0, buf.refCnt());
+        assertEquals(0, this.catalog.getCachedResponses());
+    }
+
+    @Test
+    public void testPutAfterCloseReleasesResponse() {
+        this.catalog.close();
+        // A request that was still in flight while the catalog was closed
+        final ByteBuf buf = this.get("play.example.com");
+        assertNotNull(buf);
+        assertEquals(1, buf.refCnt());
+        buf.release();
+        assertEquals(0, buf.refCnt());
+        assertEquals(0, this.catalog.getCachedResponses());
+        assertEquals(0, this.catalog.getCacheSize());
+    }
+}
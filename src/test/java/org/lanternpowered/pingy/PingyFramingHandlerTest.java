@@ -0,0 +1,175 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+public class PingyFramingHandlerTest {
+
+    /**
+     * A pooled allocator without thread caches, so that released
+     * buffers are immediately visible in the arena metrics.
+     */
+    private static final PooledByteBufAllocator ALLOCATOR = new PooledByteBufAllocator(true, 1, 1, 8192, 11, 0, 0, 0);
+
+    private static EmbeddedChannel newChannel(PingyFramingHandler handler) {
+        final EmbeddedChannel channel = new EmbeddedChannel();
+        channel.config().setAllocator(ALLOCATOR);
+        channel.pipeline().addLast(handler);
+        return channel;
+    }
+
+    private static ByteBuf directBuffer(byte[] bytes) {
+        return ALLOCATOR.directBuffer(bytes.length).writeBytes(bytes);
+    }
+
+    private static long activeAllocations() {
+        long allocations = 0;
+        for (PoolArenaMetric arena : ALLOCATOR.directArenas()) {
+            allocations += arena.numActiveAllocations();
+        }
+        return allocations;
+    }
+
+    private static long activeBytes() {
+        long bytes = 0;
+        for (PoolArenaMetric arena : ALLOCATOR.directArenas()) {
+            bytes += arena.numActiveBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Feeds the chunks and checks that the connection is closed without
+     * a frame being passed on and that all the buffers are released.
+     */
+    private static void assertRejected(PingyFramingHandler handler, byte[]... chunks) {
+        final EmbeddedChannel channel = newChannel(handler);
+        for (byte[] chunk : chunks) {
+            channel.writeInbound(directBuffer(chunk));
+        }
+        assertNull(channel.readInbound());
+        assertFalse(channel.isOpen());
+        assertEquals(0, activeAllocations());
+    }
+
+    private static void assertRejected(byte[]... chunks) {
+        assertRejected(new PingyFramingHandler(), chunks);
+    }
+
+    private static byte[] frameHeader(int length) {
+        final ByteBuf buf = Unpooled.buffer();
+        PingyBufUtils.writeVarInt(buf, length);
+        final byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testValidFrame() {
+        final EmbeddedChannel channel = newChannel(new PingyFramingHandler());
+        // A status request split over two reads
+        channel.writeInbound(directBuffer(new byte[] { 0x01 }));
+        assertNull(channel.readInbound());
+        channel.writeInbound(directBuffer(new byte[] { 0x00 }));
+        final ByteBuf frame = channel.readInbound();
+        assertEquals(1, frame.readableBytes());
+        assertEquals(0x00, frame.readByte());
+        frame.release();
+        assertTrue(channel.isOpen());
+        channel.finish();
+        assertEquals(0, activeAllocations());
+    }
+
+    @Test
+    public void testNegativeLength() {
+        assertRejected(new byte[] { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f });
+    }
+
+    @Test
+    public void testFiveByteLength() {
+        // Integer.MAX_VALUE, would ask for a 2 GB frame
+        assertRejected(new byte[] { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07 });
+        // Split over multiple reads
+        assertRejected(new byte[] { (byte) 0x80, (byte) 0x80 }, new byte[] { (byte) 0x80, (byte) 0x80, 0x01 });
+    }
+
+    @Test
+    public void testOverLimitLength() {
+        assertRejected(frameHeader(PingyFramingHandler.MAX_HANDSHAKE_LENGTH + 1));
+    }
+
+    @Test
+    public void testOverLimitStatusFrame() {
+        final PingyFramingHandler handler = new PingyFramingHandler();
+        final EmbeddedChannel channel = newChannel(handler);
+        channel.writeInbound(directBuffer(new byte[] { 0x02, 0x00, 0x00 }));
+        final ByteBuf handshake = channel.readInbound();
+        handshake.release();
+        // The handshake switched to the status state
+        handler.setMaxFrameLength(PingyFramingHandler.MAX_STATUS_LENGTH);
+        channel.writeInbound(directBuffer(frameHeader(PingyFramingHandler.MAX_STATUS_LENGTH + 1)));
+        assertNull(channel.readInbound());
+        assertFalse(channel.isOpen());
+        assertEquals(0, activeAllocations());
+    }
+
+    @Test
+    public void testCumulationLimit() {
+        // A valid handshake frame that is followed by more bytes than
+        // the status messages that may follow it, before it's complete
+        final byte[] header = frameHeader(PingyFramingHandler.MAX_HANDSHAKE_LENGTH);
+        final byte[] first = new byte[header.length + PingyFramingHandler.MAX_HANDSHAKE_LENGTH - 1];
+        System.arraycopy(header, 0, first, 0, header.length);
+        assertRejected(first, new byte[64]);
+    }
+
+    @Test
+    public void testDirectMemoryStaysFlat() {
+        final byte[] header = frameHeader(PingyFramingHandler.MAX_HANDSHAKE_LENGTH);
+        final byte[] partial = new byte[header.length + 512];
+        System.arraycopy(header, 0, partial, 0, header.length);
+        final byte[] rest = new byte[PingyFramingHandler.MAX_HANDSHAKE_LENGTH];
+        long bytes = -1;
+        for (int i = 0; i < 1000; i++) {
+            assertRejected(new byte[] { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07 });
+            assertRejected(partial, rest);
+            if (i == 10) {
+                bytes = activeBytes();
+            }
+        }
+        assertEquals(bytes, activeBytes());
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class PingyLegacyHandlerTest {
+
+    private static final PingyProperties PROPERTIES = new Gson().fromJson("{"
+            + "\"legacy-message-of-the-day\": \"Legacy\\nSecond line\","
+            + "\"outdated-message\": \"Outdated\","
+            + "\"legacy-disconnect-message\": \"Disconnected\"}", PingyProperties.class);
+
+    private static final String PING_RESPONSE = "Legacy\u00A7-1\u00A7-1";
+    private static final String FULL_PING_RESPONSE = "\u00A71\u0000127\u0000Outdated\u0000Legacy\u0000-1\u0000-1";
+    private static final String JOIN_RESPONSE = "Disconnected";
+
+    private static EmbeddedChannel newChannel() {
+        return new EmbeddedChannel(new PingyLegacyHandler(PROPERTIES));
+    }
+
+    /**
+     * Writes the chunks to the channel, the chunks
+     * after the connection was closed are dropped.
+     */
+    private static void writeInbound(EmbeddedChannel channel, byte[]... chunks) {
+        for (byte[] chunk : chunks) {
+            if (channel.isOpen()) {
+                channel.writeInbound(Unpooled.wrappedBuffer(chunk));
+            }
+        }
+    }
+
+    private static void assertResponse(EmbeddedChannel channel, String expected) {
+        final ByteBuf buf = channel.readOutbound();
+        try {
+            assertEquals(0xff, buf.readUnsignedByte());
+            assertEquals(expected.length(), buf.readUnsignedShort());
+            assertEquals(expected, buf.toString(StandardCharsets.UTF_16BE));
+        } finally {
+            buf.release();
+        }
+        assertNull(channel.readOutbound());
+        assertNull(channel.readInbound());
+        assertFalse(channel.isOpen());
+    }
+
+    private static byte[] pingHostMessage() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(0xfe);
+        output.writeByte(0x01);
+        output.writeByte(0xfa);
+        output.writeShort(11);
+        output.writeChars("MC|PingHost");
+        final String host = "play.example.com";
+        output.writeShort(7 + host.length() * 2);
+        output.writeByte(74);
+        output.writeShort(host.length());
+        output.writeChars(host);
+        output.writeInt(25565);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] joinMessage() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(0x02);
+        output.writeByte(74);
+        output.writeShort(8);
+        output.writeChars("Username");
+        output.writeShort(16);
+        output.writeChars("play.example.com");
+        output.writeInt(25565);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] handshake() {
+        final byte[] host = "play.example.com".getBytes(StandardCharsets.UTF_8);
+        final ByteBuf buf = Unpooled.buffer();
+        buf.writeByte(1 + 2 + 1 + host.length + 2 + 1);
+        buf.writeByte(0x00);
+        // Protocol 340 as a var int
+        buf.writeByte(0xd4);
+        buf.writeByte(0x02);
+        buf.writeByte(host.length);
+        buf.writeBytes(host);
+        buf.writeShort(25565);
+        buf.writeByte(1);
+        // Followed by the status request
+        buf.writeByte(1);
+        buf.writeByte(0x00);
+        final byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testPing() throws InterruptedException {
+        final EmbeddedChannel channel = newChannel();
+        writeInbound(channel, new byte[] { (byte) 0xfe });
+        // Clients before 1.4 only send a single byte, the rest may still arrive
+        assertNull(channel.readOutbound());
+        assertTrue(channel.isOpen());
+        Thread.sleep(150);
+        channel.runPendingTasks();
+        assertResponse(channel, PING_RESPONSE);
+    }
+
+    @Test
+    public void testPingWithPayload() {
+        final EmbeddedChannel channel = newChannel();
+        writeInbound(channel, new byte[] { (byte) 0xfe, 0x01 });
+        assertResponse(channel, FULL_PING_RESPONSE);
+    }
+
+    @Test
+    public void testPingHost() throws IOException, InterruptedException {
+        final byte[] message = pingHostMessage();
+        for (int split = 1; split < message.length; split++) {
+            final EmbeddedChannel channel = newChannel();
+            writeInbound(channel, Arrays.copyOf(message, split), Arrays.copyOfRange(message, split, message.length));
+            // The grace timer of a single ping byte may not produce a second response
+            Thread.sleep(split == 1 ? 150 : 0);
+            channel.runPendingTasks();
+            assertResponse(channel, FULL_PING_RESPONSE);
+        }
+    }
+
+    @Test
+    public void testJoin() throws IOException {
+        final byte[] message = joinMessage();
+        for (int split = 1; split < message.length; split++) {
+            final EmbeddedChannel channel = newChannel();
+            writeInbound(channel, Arrays.copyOf(message, split));
+            assertNull(channel.readOutbound());
+            assertTrue(channel.isOpen());
+            writeInbound(channel, Arrays.copyOfRange(message, split, message.length));
+            assertResponse(channel, JOIN_RESPONSE);
+        }
+    }
+
+    @Test
+    public void testHandshakeIsForwarded() {
+        final byte[] handshake = handshake();
+        for (int split = 1; split < handshake.length; split++) {
+            final EmbeddedChannel channel = newChannel();
+            writeInbound(channel, Arrays.copyOf(handshake, split), Arrays.copyOfRange(handshake, split, handshake.length));
+            final ByteBuf forwarded = Unpooled.buffer();
+            ByteBuf buf;
+            while ((buf = channel.readInbound()) != null) {
+                forwarded.writeBytes(buf);
+                buf.release();
+            }
+            final byte[] bytes = new byte[forwarded.readableBytes()];
+            forwarded.readBytes(bytes);
+            assertArrayEquals(handshake, bytes);
+            assertNull(channel.readOutbound());
+            assertTrue(channel.isOpen());
+            assertNull(channel.pipeline().get(PingyLegacyHandler.class));
+        }
+    }
+}
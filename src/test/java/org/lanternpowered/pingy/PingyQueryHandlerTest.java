@@ -0,0 +1,114 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.google.gson.Gson;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class PingyQueryHandlerTest {
+
+    private Pingy pingy;
+
+    @After
+    public void stop() {
+        if (this.pingy != null) {
+            this.pingy.stop();
+        }
+    }
+
+    private InetSocketAddress start() throws IOException {
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        final int queryPort;
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            queryPort = socket.getLocalPort();
+        }
+        this.pingy = new Pingy(new Gson().fromJson("{\"ip\": \"127.0.0.1\", \"port\": " + port +
+                ", \"query-enabled\": true, \"query-port\": " + queryPort +
+                ", \"event-loop-sampler-interval\": 0}", PingyProperties.class));
+        this.pingy.start();
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), queryPort);
+    }
+
+    private static byte[] request(int type, Integer token, int padding) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeShort(0xfefd);
+        output.writeByte(type);
+        output.writeInt(1);
+        if (token != null) {
+            output.writeInt(token);
+        }
+        output.write(new byte[padding]);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] exchange(DatagramSocket socket, InetSocketAddress address, byte[] request) throws IOException {
+        socket.send(new DatagramPacket(request, request.length, address));
+        final DatagramPacket response = new DatagramPacket(new byte[1024], 1024);
+        try {
+            socket.receive(response);
+        } catch (SocketTimeoutException e) {
+            return null;
+        }
+        return Arrays.copyOf(response.getData(), response.getLength());
+    }
+
+    @Test
+    public void testRejectedRequests() throws IOException {
+        final InetSocketAddress address = this.start();
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(500);
+            // Stat requests without a valid challenge token don't get a response
+            assertNull(exchange(socket, address, request(0x00, 12345, 4)));
+            assertNull(exchange(socket, address, request(0x00, null, 0)));
+            assertEquals(2, this.pingy.getRejectedQueryRequests());
+
+            final byte[] handshake = exchange(socket, address, request(0x09, null, 0));
+            final int token = Integer.parseInt(new String(handshake, 5, handshake.length - 6, StandardCharsets.US_ASCII));
+            final byte[] stat = exchange(socket, address, request(0x00, token, 4));
+            assertEquals(0x00, stat[0]);
+            assertEquals(2, this.pingy.getRejectedQueryRequests());
+        }
+    }
+}
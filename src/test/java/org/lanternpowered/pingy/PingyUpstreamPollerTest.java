@@ -0,0 +1,429 @@
+/*
+ * This file is part of Pingy, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) LanternPowered <https://www.lanternpowered.org>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, andor sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lanternpowered.pingy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.Future;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class PingyUpstreamPollerTest {
+
+    private static final Gson GSON = new Gson();
+
+    private static NioEventLoopGroup group;
+
+    private final List<Pingy> instances = new ArrayList<>();
+    private final List<ServerSocket> backends = new ArrayList<>();
+
+    @BeforeClass
+    public static void createGroup() {
+        group = new NioEventLoopGroup(2);
+    }
+
+    @AfterClass
+    public static void shutdownGroup() throws InterruptedException {
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+
+    @After
+    public void stopInstances() throws IOException {
+        this.instances.forEach(Pingy::stop);
+        for (ServerSocket backend : this.backends) {
+            backend.close();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private Pingy start(PingyProperties properties) throws IOException {
+        final Pingy pingy = Pingy.builder()
+                .properties(properties)
+                .eventLoopGroup(group)
+                .build();
+        pingy.start();
+        this.instances.add(pingy);
+        return pingy;
+    }
+
+    /**
+     * Starts a backend, its player sample is the tooltip of the outdated message.
+     */
+    private Pingy startBackend(int port, String... players) throws IOException {
+        return this.start(properties("{\"ip\": \"127.0.0.1\", \"port\": " + port +
+                ", \"outdated-message-tooltip\": " + GSON.toJson(String.join("\n", players)) +
+                ", \"event-loop-sampler-interval\": 0}"));
+    }
+
+    /**
+     * Starts a backend that responds to status requests with the
+     * player counts, pingy backends always report zero players.
+     */
+    private ServerSocket startStandInBackend(long online, long max, String... players) throws IOException {
+        final JsonArray sample = new JsonArray();
+        for (String player : players) {
+            final JsonObject entry = new JsonObject();
+            entry.addProperty("name", player);
+            entry.addProperty("id", "00000000-0000-0000-0000-000000000000");
+            sample.add(entry);
+        }
+        final JsonObject playersObject = new JsonObject();
+        playersObject.addProperty("online", online);
+        playersObject.addProperty("max", max);
+        playersObject.add("sample", sample);
+        final JsonObject status = new JsonObject();
+        status.addProperty("description", "Backend");
+        status.add("players", playersObject);
+        final byte[] json = GSON.toJson(status).getBytes(StandardCharsets.UTF_8);
+
+        final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.backends.add(serverSocket);
+        final Thread thread = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    final DataInputStream input = new DataInputStream(socket.getInputStream());
+                    // The handshake and the status request
+                    for (int i = 0; i < 2; i++) {
+                        input.readFully(new byte[readVarInt(input)]);
+                    }
+                    final ByteArrayOutputStream response = new ByteArrayOutputStream();
+                    response.write(0x00);
+                    writeVarInt(response, json.length);
+                    response.write(json);
+                    final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+                    writeVarInt(frame, response.size());
+                    response.writeTo(frame);
+                    frame.writeTo(socket.getOutputStream());
+                } catch (IOException ignored) {
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return serverSocket;
+    }
+
+    private static PingyProperties frontProperties(int port, int timeout, int pollInterval, int... upstreamPorts) {
+        final JsonArray upstreams = new JsonArray();
+        for (int upstreamPort : upstreamPorts) {
+            upstreams.add("127.0.0.1:" + upstreamPort);
+        }
+        return properties("{\"ip\": \"127.0.0.1\", \"port\": " + port +
+                ", \"message-of-the-day\": \"Front\", \"upstreams\": " + upstreams +
+                ", \"upstream-timeout\": " + timeout + ", \"upstream-poll-interval\": " + pollInterval +
+                ", \"upstream-poll-jitter\": 0, \"event-loop-sampler-interval\": 0}");
+    }
+
+    private static PingyProperties properties(String json) {
+        return GSON.fromJson(json, PingyProperties.class);
+    }
+
+    private static PingyUpstreamPoller refresh(Pingy front) throws InterruptedException {
+        final PingyUpstreamPoller poller = front.getUpstreamPoller().get();
+        assertTrue(poller.refresh().await(5, TimeUnit.SECONDS));
+        return poller;
+    }
+
+    private static JsonObject status(int port) throws IOException {
+        final ByteArrayOutputStream handshake = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(handshake);
+        output.writeByte(0x00);
+        // Protocol 340 as a var int
+        output.writeByte(0xd4);
+        output.writeByte(0x02);
+        output.writeByte(9);
+        output.writeBytes("localhost");
+        output.writeShort(port);
+        output.writeByte(1);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setSoTimeout(5000);
+            final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeByte(handshake.size());
+            handshake.writeTo(out);
+            // The status request
+            out.writeByte(1);
+            out.writeByte(0x00);
+            out.flush();
+            final DataInputStream input = new DataInputStream(socket.getInputStream());
+            readVarInt(input);
+            assertEquals(0x00, readVarInt(input));
+            final byte[] json = new byte[readVarInt(input)];
+            input.readFully(json);
+            return GSON.fromJson(new String(json, StandardCharsets.UTF_8), JsonObject.class);
+        }
+    }
+
+    private static int readVarInt(InputStream input) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = input.read();
+            if (b == -1) {
+                throw new IOException("The stream ended");
+            }
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7f) != 0) {
+            output.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static List<String> sample(JsonObject status) {
+        final List<String> names = new ArrayList<>();
+        for (JsonElement entry : status.getAsJsonObject("players").getAsJsonArray("sample")) {
+            names.add(entry.getAsJsonObject().get("name").getAsString());
+        }
+        return names;
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        final int backend1 = freePort();
+        this.startBackend(backend1, "Alice", "Bob");
+        final int backend2 = this.startStandInBackend(42, 100, "Carol").getLocalPort();
+        final int backend3 = this.startStandInBackend(8, 50, "Dave").getLocalPort();
+        final int port = freePort();
+        final PingyUpstreamPoller poller = refresh(this.start(frontProperties(port, 1000, 60000, backend1, backend2, backend3)));
+        assertEquals(3, poller.getUpstreamCount());
+        assertEquals(3, poller.getAvailableUpstreams());
+
+        final JsonObject status = status(port);
+        assertEquals(Arrays.asList("Alice", "Bob", "Carol", "Dave"), sample(status));
+        assertEquals(50, status.getAsJsonObject("players").get("online").getAsInt());
+        assertEquals(150, status.getAsJsonObject("players").get("max").getAsInt());
+        // The rest of the status is the one of the front
+        assertEquals("Front", status.get("description").getAsString());
+    }
+
+    @Test
+    public void testMergeClamp() throws Exception {
+        final int backend1 = this.startStandInBackend(2000000000L, 2000000000L).getLocalPort();
+        final int backend2 = this.startStandInBackend(2000000000L, 2000000000L).getLocalPort();
+        final int port = freePort();
+        refresh(this.start(frontProperties(port, 1000, 60000, backend1, backend2)));
+        final JsonObject players = status(port).getAsJsonObject("players");
+        assertEquals(Integer.MAX_VALUE, players.get("online").getAsInt());
+        assertEquals(Integer.MAX_VALUE, players.get("max").getAsInt());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoUpstreams() {
+        final PingyProperties properties = properties("{}");
+        new PingyUpstreamPoller(properties, new PingyStatusProvider(properties), group, false);
+    }
+
+    @Test
+    public void testMergeSampleLimit() throws Exception {
+        final int backend1 = freePort();
+        final int backend2 = freePort();
+        this.startBackend(backend1, "0", "1", "2", "3", "4", "5", "6", "7", "8", "9");
+        this.startBackend(backend2, "10", "11", "12", "13", "14");
+        final int port = freePort();
+        refresh(this.start(frontProperties(port, 1000, 60000, backend1, backend2)));
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11"), sample(status(port)));
+    }
+
+    @Test
+    public void testFallback() throws Exception {
+        final int port = freePort();
+        final PingyProperties properties = frontProperties(port, 1000, 60000, freePort(), freePort());
+        final PingyUpstreamPoller poller = refresh(this.start(properties));
+        assertEquals(0, poller.getAvailableUpstreams());
+        final JsonObject status = status(port);
+        assertNull(status.get("players"));
+        assertEquals(PingyStatusResponse.toJson(properties), status);
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        final int backend = freePort();
+        final int port = freePort();
+        final PingyProperties properties = frontProperties(port, 1000, 60000, backend);
+        final Pingy front = this.start(properties);
+        assertEquals(0, refresh(front).getAvailableUpstreams());
+        assertEquals(PingyStatusResponse.toJson(properties), status(port));
+
+        final Pingy backendPingy = this.startBackend(backend, "Alice");
+        assertEquals(1, refresh(front).getAvailableUpstreams());
+        assertEquals(Collections.singletonList("Alice"), sample(status(port)));
+
+        backendPingy.stop();
+        assertEquals(0, refresh(front).getAvailableUpstreams());
+        assertEquals(PingyStatusResponse.toJson(properties), status(port));
+    }
+
+    @Test
+    public void testRestartWithoutUpstreams() throws Exception {
+        final ServerSocket backend = this.startStandInBackend(42, 100);
+        final int port = freePort();
+        final PingyProperties properties = frontProperties(port, 1000, 60000, backend.getLocalPort());
+        final Pingy front = this.start(properties);
+        assertEquals(1, refresh(front).getAvailableUpstreams());
+        assertEquals(42, status(port).getAsJsonObject("players").get("online").getAsInt());
+
+        // The upstream status doesn't survive a restart if the upstreams are gone
+        backend.close();
+        front.stop();
+        front.start();
+        assertEquals(PingyStatusResponse.toJson(properties), status(port));
+        assertEquals(0, refresh(front).getAvailableUpstreams());
+        assertEquals(PingyStatusResponse.toJson(properties), status(port));
+    }
+
+    @Test
+    public void testReplaceWhileRetaining() throws Exception {
+        final PingyProperties properties = properties("{}");
+        final PingyStatusProvider statusProvider = new PingyStatusProvider(properties);
+        final byte[] json = GSON.toJson(PingyStatusResponse.toJson(properties)).getBytes(StandardCharsets.UTF_8);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            final Thread thread = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < end) {
+                        final ByteBuf response = statusProvider.getStatusResponse(null, null);
+                        response.getByte(response.readerIndex());
+                        response.release();
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        // Replaces the response the same way as the poller, the previous one is released immediately
+        while (System.nanoTime() < end) {
+            statusProvider.setDefaultResponse(PingyStatusResponse.of(Unpooled.wrappedBuffer(json), null)).release();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        final int backend = freePort();
+        this.startBackend(backend, "Alice");
+        // Accepts connections in the backlog but never responds, every refresh takes the full timeout
+        try (ServerSocket unresponsive = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            final int timeout = 200;
+            // Polls back to back, so that the scheduled refreshes race with the manual ones
+            final Pingy front = this.start(frontProperties(freePort(), timeout, 1, backend, unresponsive.getLocalPort()));
+            final PingyUpstreamPoller poller = front.getUpstreamPoller().get();
+
+            final Future<Void> first = poller.refresh();
+            assertFalse(first.isDone());
+            assertSame(first, poller.refresh());
+
+            final Set<Future<Void>> refreshes = Collections.newSetFromMap(new IdentityHashMap<>());
+            final AtomicBoolean overlap = new AtomicBoolean();
+            final long duration = 1000;
+            final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(duration);
+            final List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                final Thread thread = new Thread(() -> {
+                    while (System.nanoTime() < end) {
+                        final Future<Void> refresh = poller.refresh();
+                        synchronized (refreshes) {
+                            if (refreshes.add(refresh)) {
+                                // A new refresh may only start once all the previous ones are done,
+                                // the previous refreshes are checked before the new one
+                                final boolean running = refreshes.stream().anyMatch(other -> other != refresh && !other.isDone());
+                                if (running && !refresh.isDone()) {
+                                    overlap.set(true);
+                                }
+                            }
+                        }
+                        Thread.yield();
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            front.stop();
+            for (Future<Void> refresh : refreshes) {
+                assertTrue(refresh.await(5, TimeUnit.SECONDS));
+            }
+            assertFalse(overlap.get());
+            assertTrue(refreshes.contains(first));
+            assertTrue(refreshes.size() >= 2);
+            assertTrue(refreshes.size() + " refreshes", refreshes.size() <= duration / timeout + 2);
+            assertEquals(1, poller.getAvailableUpstreams());
+        }
+    }
+}